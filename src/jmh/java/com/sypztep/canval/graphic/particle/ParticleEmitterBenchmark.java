@@ -0,0 +1,118 @@
+package com.sypztep.canval.graphic.particle;
+
+import com.sypztep.canval.graphic.SpriteInstances;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-frame cost of a full emitter: integrating one 60 Hz step and packing the sprite instances.
+ * Scores are particles per millisecond; each size is its own method because
+ * {@link OperationsPerInvocation} needs a constant.
+ * Particles live 1-3 seconds and expired ones are respawned after every step, so the count stays constant.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParticleEmitterBenchmark {
+    private static final float FRAME_TIME = 1.0f / 60.0f;
+    private static final int SMALL = 1000;
+    private static final int MEDIUM = 20000;
+    private static final int LARGE = 100000;
+
+    @Param({"false", "true"})
+    public boolean parallel;
+
+    private final SplittableRandom random = new SplittableRandom(42);
+    private ParticleEmitter small, medium, large;
+
+    @Setup
+    public void setup() {
+        small = createEmitter(SMALL);
+        medium = createEmitter(MEDIUM);
+        large = createEmitter(LARGE);
+    }
+
+    private ParticleEmitter createEmitter(int particles) {
+        ParticleEmitter emitter = new ParticleEmitter(particles);
+        emitter.setAcceleration(30.0f, 900.0f);
+        emitter.setDrag(0.1f);
+        emitter.setParallel(parallel);
+        respawn(emitter);
+        return emitter;
+    }
+
+    // Top the emitter back up to capacity, like a steady rain source would
+    private void respawn(ParticleEmitter emitter) {
+        for (int i = emitter.getCount(); i < emitter.getCapacity(); i++) {
+            emitter.spawn((float) random.nextDouble(1920.0), (float) random.nextDouble(1080.0),
+                    (float) random.nextDouble(-50.0, 50.0), (float) random.nextDouble(200.0, 600.0),
+                    (float) random.nextDouble(1.0, 3.0), 3.0f, 0xAA99BBFF);
+        }
+    }
+
+    private int step(ParticleEmitter emitter) {
+        emitter.update(FRAME_TIME);
+        respawn(emitter);
+        return emitter.getCount();
+    }
+
+    @TearDown
+    public void tearDown() {
+        small.cleanup();
+        medium.cleanup();
+        large.cleanup();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SMALL)
+    public int update1k() {
+        return step(small);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MEDIUM)
+    public int update20k() {
+        return step(medium);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LARGE)
+    public int update100k() {
+        return step(large);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SMALL)
+    public SpriteInstances buildInstances1k() {
+        return small.buildInstances();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MEDIUM)
+    public SpriteInstances buildInstances20k() {
+        return medium.buildInstances();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LARGE)
+    public SpriteInstances buildInstances100k() {
+        return large.buildInstances();
+    }
+}
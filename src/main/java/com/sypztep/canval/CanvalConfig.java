@@ -10,6 +10,15 @@ public final class CanvalConfig {
     private static int defaultWindowWidth = 1080;
     private static int defaultWindowHeight = 720;
     private static String defaultWindowTitle = "Canval Engine";
+    private static boolean immediateModeRendering = false; // Fallback for contexts without buffer mapping
+    private static boolean onDemandRendering = false; // Only redraw after input, animation or resize
+    private static double idleWaitTimeout = 0.5; // Seconds to block for events while nothing changes
+    private static boolean shaderCacheEnabled = true; // Reuse linked program binaries between launches
+    private static String shaderCacheDirectory = "cache/shaders";
+    private static boolean renderThreadEnabled = false; // Draw recorded snapshots on a render thread (clients must record frames)
+    private static int frameQueueSlots = 2; // Snapshots in flight between the two threads (2 or 3)
+    private static long panelCacheBudget = 64L * 1024 * 1024; // Bytes of texture memory for cached panels
+    private static boolean gpuTimingEnabled = false; // Time render passes with GL_TIME_ELAPSED queries
 
     public static FontResource getDefaultFont() {
         return defaultFont != null ? defaultFont.value() : Fonts.DEFAULT_FONT.value();
@@ -27,4 +36,31 @@ public final class CanvalConfig {
 
     public static String getDefaultWindowTitle() { return defaultWindowTitle; }
     public static void setDefaultWindowTitle(String title) { defaultWindowTitle = title; }
-}
\ No newline at end of file
+
+    public static boolean isImmediateModeRendering() { return immediateModeRendering; }
+    public static void setImmediateModeRendering(boolean enabled) { immediateModeRendering = enabled; }
+
+    public static boolean isOnDemandRendering() { return onDemandRendering; }
+    public static void setOnDemandRendering(boolean enabled) { onDemandRendering = enabled; }
+
+    public static double getIdleWaitTimeout() { return idleWaitTimeout; }
+    public static void setIdleWaitTimeout(double seconds) { idleWaitTimeout = seconds; }
+
+    public static boolean isShaderCacheEnabled() { return shaderCacheEnabled; }
+    public static void setShaderCacheEnabled(boolean enabled) { shaderCacheEnabled = enabled; }
+
+    public static String getShaderCacheDirectory() { return shaderCacheDirectory; }
+    public static void setShaderCacheDirectory(String directory) { shaderCacheDirectory = directory; }
+
+    public static boolean isRenderThreadEnabled() { return renderThreadEnabled; }
+    public static void setRenderThreadEnabled(boolean enabled) { renderThreadEnabled = enabled; }
+
+    public static int getFrameQueueSlots() { return frameQueueSlots; }
+    public static void setFrameQueueSlots(int slots) { frameQueueSlots = slots; }
+
+    public static long getPanelCacheBudget() { return panelCacheBudget; }
+    public static void setPanelCacheBudget(long bytes) { panelCacheBudget = bytes; }
+
+    public static boolean isGpuTimingEnabled() { return gpuTimingEnabled; }
+    public static void setGpuTimingEnabled(boolean enabled) { gpuTimingEnabled = enabled; }
+}
@@ -1,6 +1,8 @@
 package com.sypztep.canval;
 
 import com.sypztep.canval.graphic.DrawContext;
+import com.sypztep.canval.graphic.FrameSnapshot;
+import com.sypztep.canval.graphic.gl.GlStateManager;
 import com.sypztep.canval.init.Fonts;
 import com.sypztep.canval.util.ResourceManager;
 import com.sypztep.canval.util.identifier.Registries;
@@ -23,11 +25,16 @@ import static org.lwjgl.system.MemoryUtil.NULL;
 
 public final class CanvalEngine {
     private static final Logger LOGGER = LoggerFactory.getLogger(CanvalConfig.getDefaultWindowTitle());
+    // Event wait while an effect is animating but has nothing new to show yet
+    private static final double ANIMATION_WAIT_TIMEOUT = 1.0 / 120.0;
+    private static final long STATS_LOG_INTERVAL_NANOS = 5_000_000_000L;
 
     private long window;
     private final Canval canval = new Canval();
     private final CanvalClient canvalClient = new CanvalClient();
     private DrawContext drawContext;
+    private RenderThread renderThread;
+    private final FrameTimer updateTimer = new FrameTimer();
 
     // Current window dimensions
     private int currentWidth;
@@ -97,22 +104,20 @@ public final class CanvalEngine {
             }
             LOGGER.info("GLFW initialized");
 
-            // Configure window
-            glfwDefaultWindowHints();
-            glfwWindowHint(GLFW_VISIBLE, GLFW_FALSE);
-            glfwWindowHint(GLFW_RESIZABLE, GLFW_TRUE);
-
             // Store initial dimensions
             currentWidth = CanvalConfig.getDefaultWindowWidth();
             currentHeight = CanvalConfig.getDefaultWindowHeight();
 
-            // Create window
-            window = glfwCreateWindow(
-                    currentWidth,
-                    currentHeight,
-                    CanvalConfig.getDefaultWindowTitle(),
-                    NULL, NULL
-            );
+            // Create window - core profile for the shader pipeline, legacy context as fallback
+            if (!CanvalConfig.isImmediateModeRendering()) {
+                window = createWindow(true);
+                if (window == NULL) {
+                    LOGGER.warn("OpenGL 3.3 core profile unavailable, falling back to a legacy context");
+                }
+            }
+            if (window == NULL) {
+                window = createWindow(false);
+            }
 
             if (window == NULL) {
                 throw new RuntimeException("Failed to create the GLFW window");
@@ -182,12 +187,28 @@ public final class CanvalEngine {
     private void mainLoop() {
         LOGGER.info("Starting main loop");
 
+        if (CanvalConfig.isRenderThreadEnabled()) {
+            if (canvalClient.recordsFrames()) {
+                pipelinedLoop();
+                return;
+            }
+            LOGGER.warn("Render thread enabled, but the client does not record frame snapshots - drawing on the main thread");
+        }
+
         while (!glfwWindowShouldClose(window)) {
             // Update key binding states
             KeyBindings.updatePressedStates(window);
 
+            // On-demand rendering: block for events instead of redrawing an unchanged screen
+            if (CanvalConfig.isOnDemandRendering() && !drawContext.update()) {
+                glfwWaitEventsTimeout(drawContext.isAnimating()
+                        ? ANIMATION_WAIT_TIMEOUT
+                        : CanvalConfig.getIdleWaitTimeout());
+                continue;
+            }
+
             // Clear framebuffer
-            glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
+            GlStateManager.clear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
 
             drawContext.beginFrame();
             render();
@@ -201,6 +222,67 @@ public final class CanvalEngine {
         LOGGER.info("Main loop ended");
     }
 
+    /**
+     * Main loop with a separate render thread: this thread polls input, updates the game and fills
+     * frame snapshots while the render thread draws the previous ones
+     */
+    private void pipelinedLoop() {
+        if (CanvalConfig.isOnDemandRendering()) {
+            LOGGER.warn("On-demand rendering is ignored while the render thread is enabled");
+        }
+        renderThread = new RenderThread(window, drawContext, CanvalConfig.getFrameQueueSlots(), currentWidth, currentHeight);
+        renderThread.start();
+
+        long frameIndex = 0;
+        long lastTime = System.nanoTime();
+        long lastStatsLog = lastTime;
+        try {
+            while (!glfwWindowShouldClose(window) && renderThread.isRunning()) {
+                KeyBindings.updatePressedStates(window);
+
+                long waitStart = System.nanoTime();
+                FrameSnapshot frame = renderThread.acquire();
+                if (frame == null) break;
+
+                long workStart = System.nanoTime();
+                float deltaTime = (workStart - lastTime) / 1_000_000_000.0f;
+                lastTime = workStart;
+
+                frame.begin(frameIndex++, currentWidth, currentHeight, deltaTime);
+                try {
+                    canvalClient.update(deltaTime);
+                    canvalClient.record(frame);
+                } catch (Exception e) {
+                    LOGGER.error("Update error", e);
+                }
+                renderThread.publish(frame);
+
+                glfwPollEvents();
+                long now = System.nanoTime();
+                updateTimer.record(now - workStart, workStart - waitStart);
+
+                if (now - lastStatsLog >= STATS_LOG_INTERVAL_NANOS) {
+                    lastStatsLog = now;
+                    logPipelineStats();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            renderThread.shutdown();
+        }
+    }
+
+    private void logPipelineStats() {
+        FrameTimer renderTimer = renderThread.getTimer();
+        LOGGER.debug("Update {} ms (waited {} ms), render {} ms (waited {} ms), {} frame(s) queued",
+                String.format("%.2f", updateTimer.getAverageWorkMillis()),
+                String.format("%.2f", updateTimer.getAverageWaitMillis()),
+                String.format("%.2f", renderTimer.getAverageWorkMillis()),
+                String.format("%.2f", renderTimer.getAverageWaitMillis()),
+                renderThread.getQueuedFrames());
+    }
+
     /**
      * Render game content
      */
@@ -219,7 +301,10 @@ public final class CanvalEngine {
         LOGGER.info("=== Cleanup Phase ===");
 
         try {
-            drawContext.cleanup();
+            // The render thread releases its GL resources itself before giving up the context
+            if (renderThread == null) {
+                drawContext.cleanup();
+            }
             ResourceManager.cleanup();
             Registries.cleanup();
             KeyBindings.cleanup();
@@ -244,31 +329,66 @@ public final class CanvalEngine {
         LOGGER.info("✓ Cleanup completed");
     }
 
+    private long createWindow(boolean coreProfile) {
+        // Configure window
+        glfwDefaultWindowHints();
+        glfwWindowHint(GLFW_VISIBLE, GLFW_FALSE);
+        glfwWindowHint(GLFW_RESIZABLE, GLFW_TRUE);
+
+        if (coreProfile) {
+            glfwWindowHint(GLFW_CONTEXT_VERSION_MAJOR, 3);
+            glfwWindowHint(GLFW_CONTEXT_VERSION_MINOR, 3);
+            glfwWindowHint(GLFW_OPENGL_PROFILE, GLFW_OPENGL_CORE_PROFILE);
+            glfwWindowHint(GLFW_OPENGL_FORWARD_COMPAT, GLFW_TRUE);
+        }
+
+        return glfwCreateWindow(
+                currentWidth,
+                currentHeight,
+                CanvalConfig.getDefaultWindowTitle(),
+                NULL, NULL
+        );
+    }
+
     private void setupCallbacks() {
         // Key callback - now handled by KeyBinding system
         glfwSetKeyCallback(window, (window, key, scancode, action, mods) -> {
             KeyBindings.onKey(key, scancode, action, mods);
             handleEngineKeyBindings();
+            drawContext.invalidate();
         });
 
         // Mouse button callback
         glfwSetMouseButtonCallback(window, (window, button, action, mods) -> {
             KeyBindings.onMouseButton(button, action, mods);
+            drawContext.invalidate();
         });
 
-        // Window resize callback
-        glfwSetFramebufferSizeCallback(window, (window, width, height) -> {
-            drawContext.updateViewport(width, height);
+        // Window contents damaged (uncovered, restored) - redraw even in on-demand mode
+        glfwSetWindowRefreshCallback(window, window -> {
+            if (drawContext != null) drawContext.invalidate();
         });
 
+        // Window resize callback
+        glfwSetFramebufferSizeCallback(window, (window, width, height) -> onResize(width, height));
+
         // Window size callback (different from framebuffer)
-        glfwSetWindowSizeCallback(window, (window, width, height) -> {
-            drawContext.updateViewport(width, height);
-        });
+        glfwSetWindowSizeCallback(window, (window, width, height) -> onResize(width, height));
 
         LOGGER.debug("All GLFW callbacks set up");
     }
 
+    /**
+     * With a render thread the new size travels in the next snapshot, since only that thread may touch GL
+     */
+    private void onResize(int width, int height) {
+        currentWidth = width;
+        currentHeight = height;
+        if (renderThread == null) {
+            drawContext.updateViewport(width, height);
+        }
+    }
+
     /**
      * Handle engine-level key bindings that should be processed immediately
      */
@@ -277,6 +397,9 @@ public final class CanvalEngine {
             LOGGER.info("Quit key binding activated - shutting down engine");
             glfwSetWindowShouldClose(window, true);
         }
+        while (KeyBindings.DEBUG_OVERLAY.wasPressed()) {
+            drawContext.getDebugOverlay().toggle();
+        }
     }
 
     private void centerWindow() {
@@ -315,6 +438,20 @@ public final class CanvalEngine {
         LOGGER.info("  Fonts loaded: {}", fontCount);
     }
 
+    /**
+     * Timings of the update side of the pipeline (main loop work and time blocked on a free snapshot)
+     */
+    public FrameTimer getUpdateTimer() {
+        return updateTimer;
+    }
+
+    /**
+     * Timings of the render thread, or null when it is not enabled
+     */
+    public FrameTimer getRenderTimer() {
+        return renderThread != null ? renderThread.getTimer() : null;
+    }
+
     /**
      * Get current window dimensions
      */
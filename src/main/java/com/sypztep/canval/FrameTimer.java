@@ -0,0 +1,44 @@
+package com.sypztep.canval;
+
+/**
+ * Smoothed per-frame timings for one thread: time spent working and time spent
+ * waiting on the other side of the frame queue. Written by one thread, readable from any.
+ */
+public final class FrameTimer {
+    private static final double SMOOTHING = 0.05;
+
+    private volatile double averageWorkMillis = 0.0;
+    private volatile double averageWaitMillis = 0.0;
+    private volatile double lastWorkMillis = 0.0;
+    private volatile long frames = 0;
+
+    void record(long workNanos, long waitNanos) {
+        double work = workNanos / 1_000_000.0;
+        double wait = waitNanos / 1_000_000.0;
+        if (frames == 0) {
+            averageWorkMillis = work;
+            averageWaitMillis = wait;
+        } else {
+            averageWorkMillis += (work - averageWorkMillis) * SMOOTHING;
+            averageWaitMillis += (wait - averageWaitMillis) * SMOOTHING;
+        }
+        lastWorkMillis = work;
+        frames++;
+    }
+
+    public double getAverageWorkMillis() {
+        return averageWorkMillis;
+    }
+
+    public double getAverageWaitMillis() {
+        return averageWaitMillis;
+    }
+
+    public double getLastWorkMillis() {
+        return lastWorkMillis;
+    }
+
+    public long getFrames() {
+        return frames;
+    }
+}
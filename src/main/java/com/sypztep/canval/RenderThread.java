@@ -0,0 +1,159 @@
+package com.sypztep.canval;
+
+import com.sypztep.canval.graphic.DrawContext;
+import com.sypztep.canval.graphic.FrameSnapshot;
+import com.sypztep.canval.graphic.gl.GlStateManager;
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GLCapabilities;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.lwjgl.glfw.GLFW.*;
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.system.MemoryUtil.NULL;
+
+/**
+ * Owns the GL context and draws {@link FrameSnapshot}s published by the update thread.
+ * <p>
+ * A fixed set of snapshots cycles between two queues: the update thread takes a free one, fills it and
+ * publishes it; this thread draws it and hands it back. With two slots the update thread can run one
+ * frame ahead, with three it can absorb one slow frame on either side without stalling the other.
+ */
+final class RenderThread {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RenderThread.class);
+    private static final long POLL_TIMEOUT_MS = 100;
+
+    private final long window;
+    private final DrawContext drawContext;
+    private final GLCapabilities capabilities;
+    private final BlockingQueue<FrameSnapshot> freeFrames;
+    private final BlockingQueue<FrameSnapshot> readyFrames;
+    private final FrameTimer timer = new FrameTimer();
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    private int viewportWidth;
+    private int viewportHeight;
+
+    RenderThread(long window, DrawContext drawContext, int slots, int width, int height) {
+        if (slots < 2 || slots > 3) {
+            throw new IllegalArgumentException("Frame queue needs 2 or 3 slots, got " + slots);
+        }
+        this.window = window;
+        this.drawContext = drawContext;
+        this.capabilities = GL.getCapabilities();
+        this.freeFrames = new ArrayBlockingQueue<>(slots);
+        this.readyFrames = new ArrayBlockingQueue<>(slots);
+        for (int i = 0; i < slots; i++) {
+            freeFrames.add(new FrameSnapshot());
+        }
+        this.viewportWidth = width;
+        this.viewportHeight = height;
+        this.thread = new Thread(this::run, "Canval Render Thread");
+    }
+
+    /**
+     * Release the context from the calling thread and start drawing on the render thread
+     */
+    void start() {
+        glfwMakeContextCurrent(NULL);
+        GL.setCapabilities(null);
+        thread.start();
+        LOGGER.info("Render thread started with {} frame slots", freeFrames.remainingCapacity() + freeFrames.size());
+    }
+
+    /**
+     * Take a snapshot to fill, blocking while every slot is queued or being drawn
+     *
+     * @return null if the render thread stopped
+     */
+    FrameSnapshot acquire() throws InterruptedException {
+        while (running) {
+            FrameSnapshot frame = freeFrames.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            if (frame != null) return frame;
+        }
+        return null;
+    }
+
+    void publish(FrameSnapshot frame) {
+        readyFrames.add(frame);
+    }
+
+    int getQueuedFrames() {
+        return readyFrames.size();
+    }
+
+    FrameTimer getTimer() {
+        return timer;
+    }
+
+    boolean isRunning() {
+        return running;
+    }
+
+    private void run() {
+        glfwMakeContextCurrent(window);
+        GL.setCapabilities(capabilities);
+
+        try {
+            long waitStart = System.nanoTime();
+            while (running) {
+                FrameSnapshot frame = readyFrames.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                if (frame == null) continue;
+
+                long workStart = System.nanoTime();
+                drawFrame(frame);
+                freeFrames.add(frame);
+
+                long now = System.nanoTime();
+                timer.record(now - workStart, workStart - waitStart);
+                waitStart = now;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            LOGGER.error("Render thread failed", e);
+            glfwSetWindowShouldClose(window, true);
+        } finally {
+            running = false;
+            drawContext.cleanup();
+            glfwMakeContextCurrent(NULL);
+            GL.setCapabilities(null);
+            LOGGER.info("Render thread stopped after {} frames", timer.getFrames());
+        }
+    }
+
+    private void drawFrame(FrameSnapshot frame) {
+        if (frame.getWidth() != viewportWidth || frame.getHeight() != viewportHeight) {
+            viewportWidth = frame.getWidth();
+            viewportHeight = frame.getHeight();
+            drawContext.updateViewport(viewportWidth, viewportHeight);
+        }
+
+        GlStateManager.clear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
+        drawContext.beginFrame();
+        try {
+            frame.draw(drawContext);
+        } catch (Exception e) {
+            LOGGER.error("Rendering error in frame {}", frame.getFrameIndex(), e);
+        }
+        drawContext.endFrame();
+        glfwSwapBuffers(window);
+    }
+
+    /**
+     * Stop after the frame in progress and wait for the thread to release the context
+     */
+    void shutdown() {
+        running = false;
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.sypztep.canval.graphic;
+
+import com.sypztep.canval.util.resource.AnimationResource;
+
+/**
+ * Playback state for one animated sprite. Advance it with {@link DrawContext#getDeltaTime()}
+ * and draw it with {@link DrawContext#drawAnimation}. Several players can share one animation.
+ */
+public final class AnimationPlayer {
+    private AnimationResource animation;
+    private float time = 0.0f;
+    private int frameOffset;   // Index into the sheet's packed UV table
+    private boolean playing = true;
+    private boolean finished = false;
+
+    // GL texture of the sheet, resolved on first draw
+    int textureId = 0;
+
+    public AnimationPlayer(AnimationResource animation) {
+        setAnimation(animation);
+    }
+
+    /**
+     * Switch to another animation and restart from its first frame
+     */
+    public void setAnimation(AnimationResource animation) {
+        if (this.animation != null && !this.animation.sheet().texture().equals(animation.sheet().texture())) {
+            textureId = 0;
+        }
+        this.animation = animation;
+        restart();
+    }
+
+    /**
+     * Advance playback by {@code deltaTime} seconds
+     *
+     * @return true if the displayed frame changed
+     */
+    public boolean update(float deltaTime) {
+        if (!playing || finished) return false;
+
+        int previous = frameOffset;
+        time += deltaTime;
+
+        int frame = (int) (time / animation.frameDuration());
+        if (frame >= animation.frameCount()) {
+            if (animation.loop()) {
+                time %= animation.frameDuration() * animation.frameCount();
+                frame = Math.min((int) (time / animation.frameDuration()), animation.frameCount() - 1);
+            } else {
+                frame = animation.frameCount() - 1;
+                finished = true;
+            }
+        }
+        frameOffset = (animation.firstFrame() + frame) * 4;
+        return frameOffset != previous;
+    }
+
+    public void restart() {
+        time = 0.0f;
+        finished = false;
+        frameOffset = animation.firstFrame() * 4;
+    }
+
+    public void play() {
+        playing = true;
+    }
+
+    public void pause() {
+        playing = false;
+    }
+
+    public boolean isPlaying() {
+        return playing && !finished;
+    }
+
+    /**
+     * Whether a non-looping animation reached its last frame
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    public int getFrame() {
+        return frameOffset / 4 - animation.firstFrame();
+    }
+
+    public AnimationResource getAnimation() {
+        return animation;
+    }
+
+    int getFrameOffset() {
+        return frameOffset;
+    }
+}
@@ -0,0 +1,44 @@
+package com.sypztep.canval.graphic;
+
+import com.sypztep.canval.graphic.gl.GlStateManager;
+
+import static org.lwjgl.opengl.GL14.*;
+
+/**
+ * Blend functions a quad can be drawn with.
+ * Alpha is always accumulated as coverage ({@code ONE, ONE_MINUS_SRC_ALPHA}), which keeps
+ * offscreen layers valid premultiplied images that composite correctly.
+ */
+public enum BlendMode {
+    /**
+     * Regular straight-alpha blending
+     */
+    ALPHA(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA, GL_ONE, GL_ONE_MINUS_SRC_ALPHA),
+    /**
+     * Adds the source color on top, for glows and light effects
+     */
+    ADDITIVE(GL_SRC_ALPHA, GL_ONE, GL_ZERO, GL_ONE),
+    /**
+     * For textures whose color is already multiplied by alpha
+     */
+    PREMULTIPLIED(GL_ONE, GL_ONE_MINUS_SRC_ALPHA, GL_ONE, GL_ONE_MINUS_SRC_ALPHA);
+
+    private final int srcFactor;
+    private final int dstFactor;
+    private final int srcAlphaFactor;
+    private final int dstAlphaFactor;
+
+    BlendMode(int srcFactor, int dstFactor, int srcAlphaFactor, int dstAlphaFactor) {
+        this.srcFactor = srcFactor;
+        this.dstFactor = dstFactor;
+        this.srcAlphaFactor = srcAlphaFactor;
+        this.dstAlphaFactor = dstAlphaFactor;
+    }
+
+    /**
+     * Set this blend function through the state manager
+     */
+    public void apply() {
+        GlStateManager.setBlendFuncSeparate(srcFactor, dstFactor, srcAlphaFactor, dstAlphaFactor);
+    }
+}
@@ -0,0 +1,75 @@
+package com.sypztep.canval.graphic;
+
+import java.util.function.Consumer;
+
+/**
+ * A UI panel rendered once into a texture and redrawn as a single quad until it is marked dirty.
+ * The painter draws in panel-local coordinates, (0, 0) being the panel's top-left corner.
+ * <pre>
+ * CachedPanel dialog = new CachedPanel(600, 160, ctx -> {
+ *     ctx.drawRect(0, 0, 600, 160, 0xCC000000);
+ *     ctx.drawRectOutline(0, 0, 600, 160, 2, 0xFFFFFFFF);
+ *     ctx.drawText(line, 16, 16, 24, font);
+ * });
+ * ctx.drawCachedPanel(dialog, 40, 520);
+ * dialog.markDirty(); // after the line changes
+ * </pre>
+ * Panel textures share a memory budget ({@link com.sypztep.canval.CanvalConfig#getPanelCacheBudget()});
+ * the least recently drawn panels lose their texture first and are simply repainted when drawn again.
+ */
+public class CachedPanel {
+    private final Consumer<DrawContext> painter;
+    private int width;
+    private int height;
+    private boolean dirty = true;
+
+    public CachedPanel(int width, int height, Consumer<DrawContext> painter) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Panel size must be positive: " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+        this.painter = painter;
+    }
+
+    /**
+     * Repaint the panel the next time it is drawn
+     */
+    public void markDirty() {
+        dirty = true;
+    }
+
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    void markClean() {
+        dirty = false;
+    }
+
+    /**
+     * Resize the panel; its texture is recreated on the next draw
+     */
+    public void setSize(int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Panel size must be positive: " + width + "x" + height);
+        }
+        if (this.width != width || this.height != height) {
+            this.width = width;
+            this.height = height;
+            dirty = true;
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    void paint(DrawContext context) {
+        painter.accept(context);
+    }
+}
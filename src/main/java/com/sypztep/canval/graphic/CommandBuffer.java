@@ -0,0 +1,144 @@
+package com.sypztep.canval.graphic;
+
+import com.sypztep.canval.util.math.MatrixStack;
+import org.joml.Matrix4f;
+
+import java.util.Arrays;
+
+/**
+ * Quads built on any thread without touching OpenGL, merged into the frame on the render thread with
+ * {@link DrawContext#submit(CommandBuffer)} or {@link DrawContext#drawParallel}.
+ * <p>
+ * A buffer belongs to one thread while recording. Vertices are transformed by the buffer's own
+ * {@link #getMatrices() matrix stack} as they are added, and the layer and blend mode are captured per
+ * quad so the render thread only assigns sequence numbers. Textures are plain GL ids; resolve them on
+ * the render thread beforehand. Text is not supported here, since glyph atlases upload on demand.
+ */
+public class CommandBuffer {
+    /**
+     * Texture id standing in for the render system's white texel
+     */
+    public static final int WHITE_TEXTURE = 0;
+
+    private final MatrixStack matrices = new MatrixStack();
+    private final Matrix4f spriteTransform = new Matrix4f();
+    private RenderLayer layer = RenderLayer.UI;
+    private BlendMode blend = BlendMode.ALPHA;
+
+    // 4 vertices per quad, already transformed
+    float[] positions;
+    float[] texCoords;
+    int[] colors;      // packed RGBA
+    int[] textures;
+    byte[] states;     // layer ordinal << 2 | blend ordinal
+    int quadCount = 0;
+
+    public CommandBuffer() {
+        this(256);
+    }
+
+    public CommandBuffer(int initialQuads) {
+        int quads = Math.max(1, initialQuads);
+        positions = new float[quads * 8];
+        texCoords = new float[quads * 8];
+        colors = new int[quads * 4];
+        textures = new int[quads];
+        states = new byte[quads];
+    }
+
+    public MatrixStack getMatrices() {
+        return matrices;
+    }
+
+    public void setLayer(RenderLayer layer) {
+        this.layer = layer;
+    }
+
+    public void setBlendMode(BlendMode blend) {
+        this.blend = blend;
+    }
+
+    /**
+     * Add a textured quad with a packed color (see {@link RenderSystem#packColor})
+     */
+    public void quad(int textureId, float x1, float y1, float x2, float y2,
+                     float u1, float v1, float u2, float v2, int color) {
+        put(matrices.peek().getPositionMatrix(), x1, y1, x2, y2, u1, v1, u2, v2, color, textureId);
+    }
+
+    /**
+     * Add a solid rectangle with an ARGB color
+     */
+    public void rect(float x, float y, float width, float height, int argb) {
+        put(matrices.peek().getPositionMatrix(), x, y, x + width, y + height, 0.5f, 0.5f, 0.5f, 0.5f,
+                RenderSystem.argbToPacked(argb), WHITE_TEXTURE);
+    }
+
+    /**
+     * Expand sprite instances into quads, e.g. from {@link com.sypztep.canval.graphic.particle.ParticleEmitter#buildInstances()}
+     */
+    public void instances(int textureId, SpriteInstances instances) {
+        Matrix4f transform = matrices.peek().getPositionMatrix();
+        for (int i = 0; i < instances.size(); i++) {
+            float halfWidth = instances.width(i) * 0.5f;
+            float halfHeight = instances.height(i) * 0.5f;
+            spriteTransform.set(transform)
+                    .translate(instances.centerX(i), instances.centerY(i), 0.0f)
+                    .rotateZ(instances.rotation(i));
+            put(spriteTransform, -halfWidth, -halfHeight, halfWidth, halfHeight,
+                    instances.uv(i, 0), instances.uv(i, 1), instances.uv(i, 2), instances.uv(i, 3),
+                    instances.color(i), textureId);
+        }
+    }
+
+    private void put(Matrix4f transform, float x1, float y1, float x2, float y2,
+                     float u1, float v1, float u2, float v2, int color, int textureId) {
+        ensureCapacity(quadCount + 1);
+
+        float m00 = transform.m00(), m01 = transform.m01();
+        float m10 = transform.m10(), m11 = transform.m11();
+        float tx = transform.m30(), ty = transform.m31();
+
+        int p = quadCount * 8;
+        positions[p] = m00 * x1 + m10 * y1 + tx;     positions[p + 1] = m01 * x1 + m11 * y1 + ty;
+        positions[p + 2] = m00 * x2 + m10 * y1 + tx; positions[p + 3] = m01 * x2 + m11 * y1 + ty;
+        positions[p + 4] = m00 * x2 + m10 * y2 + tx; positions[p + 5] = m01 * x2 + m11 * y2 + ty;
+        positions[p + 6] = m00 * x1 + m10 * y2 + tx; positions[p + 7] = m01 * x1 + m11 * y2 + ty;
+
+        texCoords[p] = u1; texCoords[p + 1] = v1;
+        texCoords[p + 2] = u2; texCoords[p + 3] = v1;
+        texCoords[p + 4] = u2; texCoords[p + 5] = v2;
+        texCoords[p + 6] = u1; texCoords[p + 7] = v2;
+
+        int c = quadCount * 4;
+        colors[c] = colors[c + 1] = colors[c + 2] = colors[c + 3] = color;
+        textures[quadCount] = textureId;
+        states[quadCount] = (byte) (layer.ordinal() << 2 | blend.ordinal());
+        quadCount++;
+    }
+
+    private void ensureCapacity(int quads) {
+        if (quads <= textures.length) return;
+
+        int capacity = Math.max(quads, textures.length * 2);
+        positions = Arrays.copyOf(positions, capacity * 8);
+        texCoords = Arrays.copyOf(texCoords, capacity * 8);
+        colors = Arrays.copyOf(colors, capacity * 4);
+        textures = Arrays.copyOf(textures, capacity);
+        states = Arrays.copyOf(states, capacity);
+    }
+
+    /**
+     * Drop all recorded quads and reset the matrix stack, layer and blend mode. Memory is kept.
+     */
+    public void reset() {
+        quadCount = 0;
+        matrices.loadIdentity();
+        layer = RenderLayer.UI;
+        blend = BlendMode.ALPHA;
+    }
+
+    public int getQuadCount() {
+        return quadCount;
+    }
+}
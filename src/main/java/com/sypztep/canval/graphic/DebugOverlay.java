@@ -0,0 +1,259 @@
+package com.sypztep.canval.graphic;
+
+import com.sypztep.canval.CanvalConfig;
+import com.sypztep.canval.graphic.font.FontAtlasManager;
+import com.sypztep.canval.util.resource.FontResource;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Performance readout drawn at the end of every frame while visible: FPS, a frame-time graph,
+ * p50/p95/p99 frame times, draw calls, glyph atlas fill, memory and GC activity.
+ * <p>
+ * Samples are taken every frame, but the text and graph are painted into a {@link CachedPanel}
+ * that is only repainted a few times per second; in between the overlay costs one quad.
+ */
+public final class DebugOverlay {
+    private static final int WIDTH = 280;
+    private static final int HEIGHT = 218;
+    private static final float MARGIN = 8.0f;
+    private static final float PADDING = 8.0f;
+    private static final float FONT_SIZE = 13.0f;
+    private static final float LINE_HEIGHT = 16.0f;
+    private static final int GRAPH_SAMPLES = 128;
+    private static final float GRAPH_HEIGHT = 48.0f;
+    private static final float GRAPH_SCALE_MILLIS = 50.0f; // Frame time at the top of the graph
+    private static final long REFRESH_INTERVAL_NANOS = 250_000_000L;
+
+    private static final float TARGET_60_MILLIS = 1000.0f / 60.0f;
+    private static final float TARGET_30_MILLIS = 1000.0f / 30.0f;
+
+    private static final int BACKGROUND = 0xC0101014;
+    private static final int TEXT = 0xFFE8E8E8;
+    private static final int GOOD = 0xFF4CC35A;
+    private static final int SLOW = 0xFFE0B030;
+    private static final int BAD = 0xFFE04848;
+    private static final int GUIDE = 0x80FFFFFF;
+
+    private final RenderSystem renderSystem;
+    private final FrameTimeHistogram histogram = new FrameTimeHistogram();
+    private final float[] graph = new float[GRAPH_SAMPLES];
+    private final CachedPanel panel = new CachedPanel(WIDTH, HEIGHT, this::paint);
+    private final String[] lines = new String[8];
+    private final StringBuilder builder = new StringBuilder(64);
+
+    private final MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
+    private final List<GarbageCollectorMXBean> gcBeans = ManagementFactory.getGarbageCollectorMXBeans();
+    private final BufferPoolMXBean directPool;
+
+    // Toggled from the input thread, latched once per frame by the thread that draws
+    private final AtomicBoolean visible = new AtomicBoolean(false);
+    private boolean shownThisFrame = false;
+    private int graphHead = 0;
+    private long lastFrameNanos = 0;
+    private long refreshStartNanos = 0;
+    private int framesSinceRefresh = 0;
+    private long lastGcCount = -1;
+
+    DebugOverlay(RenderSystem renderSystem) {
+        this.renderSystem = renderSystem;
+
+        BufferPoolMXBean direct = null;
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if ("direct".equals(pool.getName())) direct = pool;
+        }
+        this.directPool = direct;
+        for (int i = 0; i < lines.length; i++) lines[i] = "";
+    }
+
+    /**
+     * Show or hide the overlay from the next frame on; safe to call from any thread
+     */
+    public void setVisible(boolean visible) {
+        this.visible.set(visible);
+    }
+
+    public void toggle() {
+        boolean current;
+        do {
+            current = visible.get();
+        } while (!visible.compareAndSet(current, !current));
+    }
+
+    public boolean isVisible() {
+        return visible.get();
+    }
+
+    /**
+     * Latch the visibility for the frame about to be drawn
+     */
+    void beginFrame() {
+        shownThisFrame = visible.get();
+    }
+
+    /**
+     * Draw the overlay if it was visible when the frame began
+     */
+    void endFrame(DrawContext context) {
+        if (shownThisFrame) {
+            render(context);
+        } else {
+            // Forget the frame clock so the time spent hidden is not recorded as one long frame
+            lastFrameNanos = 0;
+        }
+    }
+
+    public FrameTimeHistogram getHistogram() {
+        return histogram;
+    }
+
+    /**
+     * Record this frame's timing and draw the overlay on top of everything else
+     */
+    private void render(DrawContext context) {
+        long now = System.nanoTime();
+        if (lastFrameNanos == 0) {
+            // First frame since shown: start a fresh window instead of counting the hidden time
+            lastFrameNanos = now;
+            refreshStartNanos = now;
+            histogram.clear();
+            panel.markDirty();
+        } else {
+            long frameNanos = now - lastFrameNanos;
+            lastFrameNanos = now;
+            histogram.record(frameNanos);
+            graph[graphHead] = frameNanos / 1_000_000.0f;
+            graphHead = (graphHead + 1) % GRAPH_SAMPLES;
+            framesSinceRefresh++;
+        }
+
+        if (now - refreshStartNanos >= REFRESH_INTERVAL_NANOS) {
+            refreshLines(now - refreshStartNanos);
+            refreshStartNanos = now;
+            framesSinceRefresh = 0;
+            panel.markDirty();
+        }
+
+        RenderLayer previousLayer = context.getLayer();
+        BlendMode previousBlend = context.getBlendMode();
+        context.setLayer(RenderLayer.OVERLAY);
+        context.setBlendMode(BlendMode.ALPHA);
+        context.drawCachedPanel(panel, MARGIN, MARGIN);
+        context.setLayer(previousLayer);
+        context.setBlendMode(previousBlend);
+    }
+
+    private void refreshLines(long elapsedNanos) {
+        FrameStats stats = renderSystem.getFrameStats();
+        FontAtlasManager atlases = FontAtlasManager.getInstance();
+
+        float fps = framesSinceRefresh * 1_000_000_000.0f / elapsedNanos;
+        builder.setLength(0);
+        appendFixed(builder.append("FPS "), fps, 0);
+        appendFixed(builder.append("  cpu "), stats.getFrameTimeMillis(), 2);
+        if (renderSystem.isGpuTimingActive()) {
+            appendFixed(builder.append(" ms  gpu "), stats.getGpuTimeMillis(), 2);
+        }
+        lines[0] = builder.append(" ms").toString();
+
+        builder.setLength(0);
+        appendFixed(builder.append("p50 "), histogram.getPercentileMillis(0.50), 1);
+        appendFixed(builder.append("  p95 "), histogram.getPercentileMillis(0.95), 1);
+        appendFixed(builder.append("  p99 "), histogram.getPercentileMillis(0.99), 1);
+        lines[1] = builder.append(" ms").toString();
+
+        builder.setLength(0);
+        builder.append("Draws ").append(stats.get(FrameStats.Metric.DRAW_CALLS))
+                .append("  quads ").append(stats.get(FrameStats.Metric.QUADS))
+                .append("  culled ").append(stats.get(FrameStats.Metric.CULLED_QUADS));
+        lines[2] = builder.toString();
+
+        builder.setLength(0);
+        builder.append("Binds ").append(stats.get(FrameStats.Metric.TEXTURE_BINDS))
+                .append("  GL calls ").append(stats.get(FrameStats.Metric.GL_CALLS_ISSUED))
+                .append(" (-").append(stats.get(FrameStats.Metric.GL_CALLS_SKIPPED)).append(')');
+        lines[3] = builder.toString();
+
+        builder.setLength(0);
+        builder.append("Glyph atlases ").append(atlases.getAtlasCount())
+                .append("  fill ").append(Math.round(atlases.getHighestFillRatio() * 100.0f)).append('%');
+        lines[4] = builder.toString();
+
+        long heapUsed = memoryBean.getHeapMemoryUsage().getUsed();
+        long heapMax = memoryBean.getHeapMemoryUsage().getMax();
+        builder.setLength(0);
+        builder.append("Heap ").append(toMegabytes(heapUsed));
+        if (heapMax > 0) builder.append(" / ").append(toMegabytes(heapMax));
+        builder.append(" MB");
+        lines[5] = builder.toString();
+
+        // LWJGL allocations are invisible to the JVM, so the big native users are added up by hand
+        long direct = directPool != null ? directPool.getMemoryUsed() : 0;
+        builder.setLength(0);
+        builder.append("Native ").append(toMegabytes(memoryBean.getNonHeapMemoryUsage().getUsed() + direct))
+                .append(" MB  atlas ").append(toMegabytes(atlases.getAtlasBytes()))
+                .append("  panels ").append(toMegabytes(renderSystem.getPanelCacheSize()));
+        lines[6] = builder.toString();
+
+        long gcCount = 0;
+        long gcMillis = 0;
+        for (int i = 0; i < gcBeans.size(); i++) {
+            GarbageCollectorMXBean bean = gcBeans.get(i);
+            gcCount += Math.max(0, bean.getCollectionCount());
+            gcMillis += Math.max(0, bean.getCollectionTime());
+        }
+        builder.setLength(0);
+        builder.append("GC ").append(gcCount);
+        if (lastGcCount >= 0) builder.append(" (+").append(gcCount - lastGcCount).append(')');
+        builder.append("  ").append(gcMillis).append(" ms total");
+        lines[7] = builder.toString();
+        lastGcCount = gcCount;
+    }
+
+    // String.format allocates a Formatter per call; this is enough for a readout
+    private static void appendFixed(StringBuilder out, float value, int decimals) {
+        if (decimals == 0) {
+            out.append(Math.round(value));
+            return;
+        }
+        int scale = decimals == 1 ? 10 : 100;
+        long scaled = Math.round(value * scale);
+        out.append(scaled / scale).append('.');
+        long fraction = scaled % scale;
+        if (decimals == 2 && fraction < 10) out.append('0');
+        out.append(fraction);
+    }
+
+    private static long toMegabytes(long bytes) {
+        return bytes >> 20;
+    }
+
+    private void paint(DrawContext context) {
+        FontResource font = CanvalConfig.getDefaultFont();
+        context.drawRoundedRect(0, 0, WIDTH, HEIGHT, 6.0f, BACKGROUND);
+
+        float y = PADDING;
+        for (String line : lines) {
+            context.drawText(line, PADDING, y, FONT_SIZE, font, TEXT);
+            y += LINE_HEIGHT;
+        }
+
+        // Frame-time graph, oldest sample on the left
+        float graphBottom = HEIGHT - PADDING;
+        float barWidth = (WIDTH - 2 * PADDING) / GRAPH_SAMPLES;
+        for (int i = 0; i < GRAPH_SAMPLES; i++) {
+            float millis = graph[(graphHead + i) % GRAPH_SAMPLES];
+            if (millis <= 0.0f) continue;
+            float height = Math.min(millis / GRAPH_SCALE_MILLIS, 1.0f) * GRAPH_HEIGHT;
+            int color = millis <= TARGET_60_MILLIS ? GOOD : millis <= TARGET_30_MILLIS ? SLOW : BAD;
+            context.drawRect(PADDING + i * barWidth, graphBottom - height, barWidth, height, color);
+        }
+        float guideY = graphBottom - TARGET_60_MILLIS / GRAPH_SCALE_MILLIS * GRAPH_HEIGHT;
+        context.drawRect(PADDING, guideY, WIDTH - 2 * PADDING, 1.0f, GUIDE);
+    }
+}
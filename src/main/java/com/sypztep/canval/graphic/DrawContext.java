@@ -2,12 +2,21 @@ package com.sypztep.canval.graphic;
 
 import com.sypztep.canval.graphic.font.TextRenderer;
 import com.sypztep.canval.graphic.gl.GlStateManager;
+import com.sypztep.canval.graphic.particle.ParticleEmitter;
 import com.sypztep.canval.util.ResourceLocation;
 import com.sypztep.canval.util.math.MatrixStack;
 import com.sypztep.canval.util.resource.FontResource;
+import com.sypztep.canval.util.resource.SpriteSheetResource;
+import org.joml.Matrix4f;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
 /**
  * High-level drawing context that provides easy-to-use drawing methods.
  * This is the main API that users interact with for 2D rendering.
@@ -15,18 +24,25 @@ import org.slf4j.LoggerFactory;
  */
 public class DrawContext {
     private static final Logger LOGGER = LoggerFactory.getLogger(DrawContext.class);
+    private static final Matrix4f IDENTITY = new Matrix4f();
 
     private final RenderSystem renderSystem;
     private final TextRenderer textRenderer;
+    private final DebugOverlay debugOverlay;
     private long lastFrameTime = System.nanoTime();
     private float deltaTime = 0.0f;
 
+    // On-demand rendering: a frame is only needed after something invalidated the screen
+    private boolean dirty = true;
+    private boolean updated = false;
+
     public DrawContext(int windowWidth, int windowHeight) {
         // Initialize GL state manager for 2D rendering
         GlStateManager.init2D(windowWidth, windowHeight);
 
         this.renderSystem = new RenderSystem();
-        this.textRenderer = new TextRenderer();
+        this.textRenderer = new TextRenderer(renderSystem);
+        this.debugOverlay = new DebugOverlay(renderSystem);
 
         LOGGER.debug("DrawContext created: {}x{}", windowWidth, windowHeight);
     }
@@ -39,22 +55,45 @@ public class DrawContext {
     }
 
     /**
-     * Begin a new frame
+     * Advance time and animations without drawing.
+     * Invalidates the screen when a typewriter revealed new characters.
+     *
+     * @return true if a new frame needs to be drawn
      */
-    public void beginFrame() {
+    public boolean update() {
         // Calculate delta time
         long currentTime = System.nanoTime();
         deltaTime = (currentTime - lastFrameTime) / 1_000_000_000.0f;
         lastFrameTime = currentTime;
+        updated = true;
+
+        if (textRenderer.updateTypewriters(deltaTime)) {
+            invalidate();
+        }
+        // The overlay measures frame times, so it keeps frames coming while shown
+        if (debugOverlay.isVisible()) {
+            invalidate();
+        }
+        return dirty;
+    }
 
+    /**
+     * Begin a new frame
+     */
+    public void beginFrame() {
+        if (!updated) update();
+        updated = false;
+        dirty = false;
+
+        debugOverlay.beginFrame();
         renderSystem.beginFrame();
-        textRenderer.updateTypewriters(deltaTime);
     }
 
     /**
      * End the current frame
      */
     public void endFrame() {
+        debugOverlay.endFrame(this);
         renderSystem.endFrame();
     }
 
@@ -65,6 +104,28 @@ public class DrawContext {
         return deltaTime;
     }
 
+    /**
+     * Mark the screen as changed so the next frame is drawn in on-demand mode.
+     * Call this from anything that animates outside of the built-in effects.
+     */
+    public void invalidate() {
+        dirty = true;
+    }
+
+    /**
+     * Whether something changed since the last frame
+     */
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * Whether time-driven effects are running and need regular updates even without input
+     */
+    public boolean isAnimating() {
+        return textRenderer.hasActiveTypewriters();
+    }
+
     // =================== TEXTURE DRAWING ===================
 
     /**
@@ -98,6 +159,100 @@ public class DrawContext {
         renderSystem.drawTextureRegion(texture, x, y, width, height, u, v, regionWidth, regionHeight, textureWidth, textureHeight);
     }
 
+    /**
+     * Draw a resizable frame: corners keep their size, edges and center stretch to fill the area
+     */
+    public void drawNineSlice(ResourceLocation texture, float x, float y, float width, float height,
+                              NineSliceInsets insets) {
+        renderSystem.drawNineSlice(texture, x, y, width, height, insets);
+    }
+
+    /**
+     * Draw the current frame of an animated sprite at its frame size.
+     * A playing animation keeps the screen invalidated so on-demand rendering keeps drawing it.
+     */
+    public void drawAnimation(AnimationPlayer player, float x, float y) {
+        SpriteSheetResource sheet = player.getAnimation().sheet();
+        if (player.isPlaying()) invalidate();
+        renderSystem.drawAnimation(player, x, y, sheet.frameWidth(), sheet.frameHeight(), RenderSystem.WHITE);
+    }
+
+    /**
+     * Draw the current frame of an animated sprite scaled to the given size and tinted by an ARGB color
+     */
+    public void drawAnimation(AnimationPlayer player, float x, float y, float width, float height, int color) {
+        if (player.isPlaying()) invalidate();
+        renderSystem.drawAnimation(player, x, y, width, height, RenderSystem.argbToPacked(color));
+    }
+
+    /**
+     * Draw many sprites sharing one texture (particles, weather effects).
+     * Each sprite is a single packed record instead of four vertices.
+     */
+    public void drawInstances(ResourceLocation texture, SpriteInstances instances) {
+        renderSystem.drawInstances(texture, instances);
+    }
+
+    /**
+     * Draw many sprites from an already resolved GL texture
+     */
+    public void drawInstances(int textureId, SpriteInstances instances) {
+        renderSystem.drawInstances(textureId, instances);
+    }
+
+    /**
+     * Draw an emitter's live particles as untextured squares.
+     * While particles are alive the screen stays invalidated so on-demand rendering keeps drawing them.
+     */
+    public void drawParticles(ParticleEmitter emitter) {
+        if (emitter.getCount() > 0) invalidate();
+        renderSystem.drawInstances(renderSystem.getWhiteTextureId(), emitter.buildInstances());
+    }
+
+    /**
+     * Draw an emitter's live particles with a texture
+     */
+    public void drawParticles(ParticleEmitter emitter, ResourceLocation texture) {
+        if (emitter.getCount() > 0) invalidate();
+        renderSystem.drawInstances(texture, emitter.buildInstances());
+    }
+
+    /**
+     * Merge a command buffer recorded off the render thread into this frame
+     */
+    public void submit(CommandBuffer buffer) {
+        renderSystem.submit(buffer);
+    }
+
+    /**
+     * Record command buffers in parallel, then merge them in list order on this thread.
+     * {@code recorders.get(i)} fills {@code buffers.get(i)}; each buffer is reset first.
+     * Recorders run on the common ForkJoin pool and must not call into this context.
+     */
+    public void drawParallel(List<CommandBuffer> buffers, List<Consumer<CommandBuffer>> recorders) {
+        if (buffers.size() != recorders.size()) {
+            throw new IllegalArgumentException("Got " + recorders.size() + " recorders for " + buffers.size() + " command buffers");
+        }
+
+        CompletableFuture<?>[] tasks = new CompletableFuture<?>[buffers.size()];
+        for (int i = 0; i < tasks.length; i++) {
+            CommandBuffer buffer = buffers.get(i);
+            Consumer<CommandBuffer> recorder = recorders.get(i);
+            buffer.reset();
+            tasks[i] = CompletableFuture.runAsync(() -> recorder.accept(buffer), ForkJoinPool.commonPool());
+        }
+
+        try {
+            CompletableFuture.allOf(tasks).join();
+        } catch (CompletionException e) {
+            throw new RuntimeException("Command buffer recording failed", e.getCause());
+        }
+
+        for (CommandBuffer buffer : buffers) {
+            renderSystem.submit(buffer);
+        }
+    }
+
     // =================== SHAPE DRAWING ===================
 
     /**
@@ -147,6 +302,69 @@ public class DrawContext {
         drawRectOutline(x, y, width, height, lineWidth, r, g, b, a);
     }
 
+    /**
+     * Fill a rectangle with a vertical gradient between two ARGB colors
+     */
+    public void drawVerticalGradient(float x, float y, float width, float height, int top, int bottom) {
+        drawGradientRect(x, y, width, height, top, top, bottom, bottom);
+    }
+
+    /**
+     * Fill a rectangle with one ARGB color per corner
+     */
+    public void drawGradientRect(float x, float y, float width, float height,
+                                 int topLeft, int topRight, int bottomRight, int bottomLeft) {
+        renderSystem.fillGradientRect(x, y, width, height, RenderSystem.argbToPacked(topLeft),
+                RenderSystem.argbToPacked(topRight), RenderSystem.argbToPacked(bottomRight), RenderSystem.argbToPacked(bottomLeft));
+    }
+
+    /**
+     * Fill a rounded rectangle with an ARGB color
+     */
+    public void drawRoundedRect(float x, float y, float width, float height, float radius, int color) {
+        int packed = RenderSystem.argbToPacked(color);
+        renderSystem.fillRoundedRect(x, y, width, height, radius, packed, packed, packed, packed);
+    }
+
+    /**
+     * Fill a rounded rectangle with one ARGB color per corner
+     */
+    public void drawRoundedRect(float x, float y, float width, float height, float radius,
+                                int topLeft, int topRight, int bottomRight, int bottomLeft) {
+        renderSystem.fillRoundedRect(x, y, width, height, radius, RenderSystem.argbToPacked(topLeft),
+                RenderSystem.argbToPacked(topRight), RenderSystem.argbToPacked(bottomRight), RenderSystem.argbToPacked(bottomLeft));
+    }
+
+    /**
+     * Fill a circle with an ARGB color
+     */
+    public void drawCircle(float centerX, float centerY, float radius, int color) {
+        int packed = RenderSystem.argbToPacked(color);
+        renderSystem.fillEllipse(centerX - radius, centerY - radius, radius * 2, radius * 2, packed, packed, packed, packed);
+    }
+
+    /**
+     * Fill an ellipse inscribed in the given rectangle
+     */
+    public void drawEllipse(float x, float y, float width, float height, int color) {
+        int packed = RenderSystem.argbToPacked(color);
+        renderSystem.fillEllipse(x, y, width, height, packed, packed, packed, packed);
+    }
+
+    /**
+     * Draw a line of the given width with ARGB color
+     */
+    public void drawLine(float x1, float y1, float x2, float y2, float lineWidth, int color) {
+        renderSystem.drawLine(x1, y1, x2, y2, lineWidth, RenderSystem.argbToPacked(color));
+    }
+
+    /**
+     * Fill a convex polygon from x, y pairs with ARGB color
+     */
+    public void drawPolygon(float[] points, int color) {
+        renderSystem.fillPolygon(points, points.length / 2, RenderSystem.argbToPacked(color));
+    }
+
     // =================== TEXT DRAWING ===================
 
     /**
@@ -241,6 +459,7 @@ public class DrawContext {
      */
     public void startTypewriter(String textId, String text, float charactersPerSecond) {
         textRenderer.startTypewriter(textId, text, charactersPerSecond);
+        invalidate();
     }
 
     /**
@@ -277,6 +496,7 @@ public class DrawContext {
      */
     public void completeTypewriter(String textId) {
         textRenderer.completeTypewriter(textId);
+        invalidate();
     }
 
     /**
@@ -284,6 +504,7 @@ public class DrawContext {
      */
     public void resetTypewriter(String textId) {
         textRenderer.resetTypewriter(textId);
+        invalidate();
     }
 
     /**
@@ -353,6 +574,101 @@ public class DrawContext {
         renderSystem.rotateZ(angle);
     }
 
+    // =================== CLIPPING ===================
+
+    /**
+     * Clip following drawing to a rectangle (in current transform coordinates), intersected with
+     * any enclosing clip. Axis-aligned quads are cut on the CPU so batching continues; rotated ones
+     * fall back to the GPU scissor test.
+     */
+    public void pushClip(float x, float y, float width, float height) {
+        renderSystem.pushClip(x, y, width, height);
+    }
+
+    /**
+     * Restore the previous clip rectangle
+     */
+    public void popClip() {
+        renderSystem.popClip();
+    }
+
+    // =================== DRAW ORDER ===================
+
+    /**
+     * Set the layer for following draw calls. Resets to {@link RenderLayer#UI} every frame.
+     * <p>
+     * Layers draw back to front regardless of call order, but only among the quads queued between
+     * two flush points. {@link #drawInstances}, {@link #drawList}, a {@link #drawCachedPanel} that
+     * repaints, {@link #beginLayer}/{@link #endLayer}, a clip that needs the scissor fallback,
+     * {@link #flush()}, a font atlas growing and a batch with more overlap than one sort can order
+     * all draw what is queued first; anything queued afterwards lands on top, whatever its layer.
+     * Within a layer, calls keep their visible order.
+     */
+    public void setLayer(RenderLayer layer) {
+        renderSystem.setLayer(layer);
+    }
+
+    /**
+     * Get the layer draw calls currently go to
+     */
+    public RenderLayer getLayer() {
+        return renderSystem.getLayer();
+    }
+
+    /**
+     * Set the blend mode for following draw calls. Resets to {@link BlendMode#ALPHA} every frame.
+     */
+    public void setBlendMode(BlendMode blendMode) {
+        renderSystem.setBlendMode(blendMode);
+    }
+
+    /**
+     * Get the current blend mode
+     */
+    public BlendMode getBlendMode() {
+        return renderSystem.getBlendMode();
+    }
+
+    // =================== RETAINED RENDERING ===================
+
+    /**
+     * Start recording draw calls into a new {@link RenderList}. Recorded calls are not drawn.
+     * Clip rects and culling are not baked into the list; they apply wherever it is replayed.
+     */
+    public void beginRecording() {
+        beginRecording(new RenderList());
+    }
+
+    /**
+     * Start recording draw calls into an existing list, replacing its content and reusing its buffer
+     */
+    public void beginRecording(RenderList list) {
+        renderSystem.beginRecording(list);
+    }
+
+    /**
+     * Finish recording
+     *
+     * @return the recorded list, ready for {@link #drawList(RenderList, Matrix4f)}
+     */
+    public RenderList endRecording() {
+        return renderSystem.endRecording();
+    }
+
+    /**
+     * Replay a recorded list at the current transform
+     */
+    public void drawList(RenderList list) {
+        drawList(list, IDENTITY);
+    }
+
+    /**
+     * Replay a recorded list with an extra transform applied on top of the current one
+     */
+    public void drawList(RenderList list, Matrix4f transform) {
+        renderSystem.drawList(list, transform);
+    }
+
     // =================== UTILITY METHODS ===================
 
     /**
@@ -369,6 +685,41 @@ public class DrawContext {
         return renderSystem.getScreenHeight();
     }
 
+    /**
+     * Enable or disable culling of off-screen quads (on by default)
+     */
+    public void setCullingEnabled(boolean enabled) {
+        renderSystem.setCullingEnabled(enabled);
+    }
+
+    /**
+     * Quads submitted during the last frame, including culled ones
+     */
+    public int getSubmittedQuadCount() {
+        return renderSystem.getSubmittedQuadCount();
+    }
+
+    /**
+     * Built-in performance overlay, drawn on top of each frame while visible
+     */
+    public DebugOverlay getDebugOverlay() {
+        return debugOverlay;
+    }
+
+    /**
+     * Draw calls, quads, binds, glyph misses and flush reasons for recent frames
+     */
+    public FrameStats getFrameStats() {
+        return renderSystem.getFrameStats();
+    }
+
+    /**
+     * Quads dropped as off-screen during the last frame
+     */
+    public int getCulledQuadCount() {
+        return renderSystem.getCulledQuadCount();
+    }
+
     /**
      * Force flush all rendering batches
      */
@@ -381,13 +732,58 @@ public class DrawContext {
      */
     public void updateViewport(int width, int height) {
         GlStateManager.updateViewport(width, height);
+        invalidate();
     }
 
-    //TODO: Hardcode for Opacity
+    /**
+     * Draw a group of elements faded as a whole. The group is rendered into a pooled
+     * offscreen layer and composited back with one quad, so overlapping parts do not show through.
+     */
     public void drawWithOpacity(float opacity, Runnable drawCode) {
+        if (opacity <= 0.0f) return;
+        if (opacity >= 1.0f) {
+            push();
+            drawCode.run();
+            pop();
+            return;
+        }
+
+        beginLayer();
         push();
-        drawCode.run();
-        pop();
+        try {
+            drawCode.run();
+        } finally {
+            pop();
+            endLayer(opacity);
+        }
+    }
+
+    /**
+     * Start drawing into an offscreen layer. Must be matched by {@link #endLayer(float)}.
+     */
+    public void beginLayer() {
+        renderSystem.beginLayer();
+    }
+
+    /**
+     * Composite the current offscreen layer back at the given opacity
+     */
+    public void endLayer(float opacity) {
+        renderSystem.endLayer(opacity);
+    }
+
+    /**
+     * Draw a panel from its cached texture, repainting it first only if it was marked dirty or evicted
+     */
+    public void drawCachedPanel(CachedPanel panel, float x, float y) {
+        renderSystem.drawCachedPanel(panel, x, y, this);
+    }
+
+    /**
+     * Free a panel's cached texture, e.g. when the screen that owns it is closed
+     */
+    public void releaseCachedPanel(CachedPanel panel) {
+        renderSystem.releaseCachedPanel(panel);
     }
 
     /**
@@ -398,6 +794,7 @@ public class DrawContext {
 
         textRenderer.clearCache();
         textRenderer.clearTypewriters();
+        renderSystem.cleanup();
         GlStateManager.cleanup();
 
         LOGGER.debug("DrawContext cleaned up successfully");
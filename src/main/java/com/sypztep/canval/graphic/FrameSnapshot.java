@@ -0,0 +1,90 @@
+package com.sypztep.canval.graphic;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Everything the render thread needs to draw one frame, produced by the update thread.
+ * Geometry goes into {@link #getGeometry()} without touching OpenGL; work that needs the
+ * GL thread (text, render lists, cached panels) is queued with {@link #defer}.
+ * <p>
+ * Once published a snapshot is sealed and must not be modified until it comes back for reuse.
+ */
+public final class FrameSnapshot {
+    private final CommandBuffer geometry = new CommandBuffer(1024);
+    private final List<Consumer<DrawContext>> deferred = new ArrayList<>();
+    private long frameIndex;
+    private int width;
+    private int height;
+    private float deltaTime;
+    private boolean sealed = true;
+
+    /**
+     * Start filling the snapshot for a new frame
+     */
+    public void begin(long frameIndex, int width, int height, float deltaTime) {
+        geometry.reset();
+        deferred.clear();
+        this.frameIndex = frameIndex;
+        this.width = width;
+        this.height = height;
+        this.deltaTime = deltaTime;
+        sealed = false;
+    }
+
+    /**
+     * Geometry recorded on the update thread, merged before any deferred work
+     */
+    public CommandBuffer getGeometry() {
+        checkOpen();
+        return geometry;
+    }
+
+    /**
+     * Run {@code drawCode} on the render thread when this frame is drawn, in submission order.
+     * It runs concurrently with the next update, so it must only use values captured for this frame.
+     */
+    public void defer(Consumer<DrawContext> drawCode) {
+        checkOpen();
+        deferred.add(drawCode);
+    }
+
+    void seal() {
+        sealed = true;
+    }
+
+    private void checkOpen() {
+        if (sealed) {
+            throw new IllegalStateException("Frame snapshot " + frameIndex + " is sealed");
+        }
+    }
+
+    /**
+     * Draw the snapshot. Called on the render thread between {@link DrawContext#beginFrame()} and
+     * {@link DrawContext#endFrame()}.
+     */
+    public void draw(DrawContext context) {
+        seal();
+        context.submit(geometry);
+        for (Consumer<DrawContext> drawCode : deferred) {
+            drawCode.accept(context);
+        }
+    }
+
+    public long getFrameIndex() {
+        return frameIndex;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public float getDeltaTime() {
+        return deltaTime;
+    }
+}
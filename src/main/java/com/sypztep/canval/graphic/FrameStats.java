@@ -0,0 +1,217 @@
+package com.sypztep.canval.graphic;
+
+import com.sypztep.canval.graphic.font.FontAtlas;
+import com.sypztep.canval.graphic.gl.GlStateManager;
+import com.sypztep.canval.graphic.gl.GpuTimer;
+
+import java.util.Arrays;
+
+/**
+ * Per-frame render counters with a ring-buffered history of the last {@link #getHistoryLength()} frames.
+ * Filled by the render system while drawing; read it from {@link DrawContext#getFrameStats()}.
+ * <p>
+ * Counting is a handful of int increments per draw call, so the stats are always on.
+ * All values refer to completed frames: {@code get(metric)} is the last one,
+ * {@code get(metric, n)} the frame {@code n} frames before it.
+ * <p>
+ * GPU metrics are only filled with {@link com.sypztep.canval.CanvalConfig#isGpuTimingEnabled()} on a
+ * context with timer queries. They are read back asynchronously and describe the frame
+ * {@link GpuTimer#FRAMES_IN_FLIGHT} frames before the one they are stored with.
+ */
+public final class FrameStats {
+    public static final int DEFAULT_HISTORY_LENGTH = 240;
+
+    public enum Metric {
+        FRAME_TIME_MICROS,      // Between beginFrame and endFrame on the render thread
+        DRAW_CALLS,
+        QUADS,                  // Drawn, including instances and replayed lists
+        INSTANCES,
+        CULLED_QUADS,
+        TEXTURE_BINDS,
+        MATRIX_UPLOADS,
+        GL_CALLS_ISSUED,
+        GL_CALLS_SKIPPED,
+        GLYPH_MISSES,           // Glyphs rasterized into a font atlas this frame
+        FLUSH_FRAME_END,
+        FLUSH_CLIP,
+        FLUSH_LAYER,
+        FLUSH_INSTANCES,
+        FLUSH_RENDER_LIST,
+        FLUSH_CACHED_PANEL,
+        FLUSH_EXPLICIT,
+        FLUSH_ATLAS_GROWTH,
+        FLUSH_GROUP_OVERFLOW,   // Batch drawn in parts because one screen cell ran out of overlap groups
+        SPLIT_BLEND,            // Batch split into another draw call because the blend mode changed
+        SPLIT_TEXTURE_SLOTS,    // ... because every texture slot was taken
+        SPLIT_INDEX_LIMIT,      // ... because the index buffer ran out
+        GPU_TIME_MICROS,        // Sum of the GPU passes below
+        GPU_BATCH_MICROS,
+        GPU_INSTANCES_MICROS,
+        GPU_RENDER_LIST_MICROS,
+        GPU_TEXT_MICROS
+    }
+
+    /**
+     * Why the pending batch was drawn before the end of the frame
+     */
+    public enum FlushReason {
+        FRAME_END(Metric.FLUSH_FRAME_END),
+        CLIP(Metric.FLUSH_CLIP),
+        LAYER(Metric.FLUSH_LAYER),
+        INSTANCES(Metric.FLUSH_INSTANCES),
+        RENDER_LIST(Metric.FLUSH_RENDER_LIST),
+        CACHED_PANEL(Metric.FLUSH_CACHED_PANEL),
+        EXPLICIT(Metric.FLUSH_EXPLICIT),
+        ATLAS_GROWTH(Metric.FLUSH_ATLAS_GROWTH),
+        GROUP_OVERFLOW(Metric.FLUSH_GROUP_OVERFLOW);
+
+        final Metric metric;
+
+        FlushReason(Metric metric) {
+            this.metric = metric;
+        }
+    }
+
+    private static final Metric[] METRICS = Metric.values();
+    private static final int METRIC_COUNT = METRICS.length;
+
+    private final int historyLength;
+    private final int[] current = new int[METRIC_COUNT];
+    private final int[] history;   // historyLength rows of METRIC_COUNT values
+    private int head = -1;         // Row of the last completed frame
+    private int recordedFrames = 0;
+
+    // Baselines for counters kept elsewhere as running totals
+    private long frameStartNanos;
+    private long textureBindsAtStart;
+    private long matrixUploadsAtStart;
+    private long glyphMissesAtStart;
+
+    public FrameStats() {
+        this(DEFAULT_HISTORY_LENGTH);
+    }
+
+    public FrameStats(int historyLength) {
+        if (historyLength <= 0) {
+            throw new IllegalArgumentException("History length must be positive: " + historyLength);
+        }
+        this.historyLength = historyLength;
+        this.history = new int[historyLength * METRIC_COUNT];
+    }
+
+    void beginFrame() {
+        Arrays.fill(current, 0);
+        frameStartNanos = System.nanoTime();
+        textureBindsAtStart = GlStateManager.getTextureBindCount();
+        matrixUploadsAtStart = GlStateManager.getMatrixUploadCount();
+        glyphMissesAtStart = FontAtlas.getGlyphMissCount();
+    }
+
+    void endFrame(int culledQuads) {
+        current[Metric.FRAME_TIME_MICROS.ordinal()] = (int) ((System.nanoTime() - frameStartNanos) / 1000);
+        current[Metric.CULLED_QUADS.ordinal()] = culledQuads;
+        current[Metric.TEXTURE_BINDS.ordinal()] = (int) (GlStateManager.getTextureBindCount() - textureBindsAtStart);
+        current[Metric.MATRIX_UPLOADS.ordinal()] = (int) (GlStateManager.getMatrixUploadCount() - matrixUploadsAtStart);
+        current[Metric.GLYPH_MISSES.ordinal()] = (int) (FontAtlas.getGlyphMissCount() - glyphMissesAtStart);
+        current[Metric.GL_CALLS_ISSUED.ordinal()] = GlStateManager.getFrameIssuedCallCount();
+        current[Metric.GL_CALLS_SKIPPED.ordinal()] = GlStateManager.getFrameSkippedCallCount();
+
+        head = (head + 1) % historyLength;
+        System.arraycopy(current, 0, history, head * METRIC_COUNT, METRIC_COUNT);
+        if (recordedFrames < historyLength) recordedFrames++;
+    }
+
+    void gpuTimes(GpuTimer timer) {
+        if (!timer.hasResults()) return;
+        current[Metric.GPU_TIME_MICROS.ordinal()] = (int) (timer.getTotalNanos() / 1000);
+        current[Metric.GPU_BATCH_MICROS.ordinal()] = (int) (timer.getPassNanos(GpuTimer.Pass.BATCH) / 1000);
+        current[Metric.GPU_INSTANCES_MICROS.ordinal()] = (int) (timer.getPassNanos(GpuTimer.Pass.INSTANCES) / 1000);
+        current[Metric.GPU_RENDER_LIST_MICROS.ordinal()] = (int) (timer.getPassNanos(GpuTimer.Pass.RENDER_LIST) / 1000);
+        current[Metric.GPU_TEXT_MICROS.ordinal()] = (int) (timer.getPassNanos(GpuTimer.Pass.TEXT) / 1000);
+    }
+
+    void drawCall(int quads) {
+        current[Metric.DRAW_CALLS.ordinal()]++;
+        current[Metric.QUADS.ordinal()] += quads;
+    }
+
+    void instances(int count, int drawCalls) {
+        current[Metric.DRAW_CALLS.ordinal()] += drawCalls;
+        current[Metric.INSTANCES.ordinal()] += count;
+        current[Metric.QUADS.ordinal()] += count;
+    }
+
+    void flush(FlushReason reason) {
+        current[reason.metric.ordinal()]++;
+    }
+
+    void split(Metric reason) {
+        current[reason.ordinal()]++;
+    }
+
+    /**
+     * Value for the last completed frame (0 before the first one)
+     */
+    public int get(Metric metric) {
+        return get(metric, 0);
+    }
+
+    /**
+     * Value for the frame {@code framesAgo} frames before the last completed one
+     */
+    public int get(Metric metric, int framesAgo) {
+        if (framesAgo < 0 || framesAgo >= recordedFrames) return 0;
+        int row = (head - framesAgo + historyLength) % historyLength;
+        return history[row * METRIC_COUNT + metric.ordinal()];
+    }
+
+    /**
+     * Mean over the recorded history
+     */
+    public double getAverage(Metric metric) {
+        if (recordedFrames == 0) return 0.0;
+        long sum = 0;
+        for (int i = 0; i < recordedFrames; i++) {
+            sum += history[i * METRIC_COUNT + metric.ordinal()];
+        }
+        return (double) sum / recordedFrames;
+    }
+
+    /**
+     * Largest value over the recorded history
+     */
+    public int getMax(Metric metric) {
+        int max = 0;
+        for (int i = 0; i < recordedFrames; i++) {
+            max = Math.max(max, history[i * METRIC_COUNT + metric.ordinal()]);
+        }
+        return max;
+    }
+
+    public int getVertices() {
+        return get(Metric.QUADS) * 4;
+    }
+
+    public float getFrameTimeMillis() {
+        return get(Metric.FRAME_TIME_MICROS) / 1000.0f;
+    }
+
+    public float getGpuTimeMillis() {
+        return get(Metric.GPU_TIME_MICROS) / 1000.0f;
+    }
+
+    public int getFlushCount(FlushReason reason) {
+        return get(reason.metric);
+    }
+
+    /**
+     * Frames currently held in the history (at most the history length)
+     */
+    public int getRecordedFrames() {
+        return recordedFrames;
+    }
+
+    public int getHistoryLength() {
+        return historyLength;
+    }
+}
@@ -0,0 +1,84 @@
+package com.sypztep.canval.graphic;
+
+import java.util.Arrays;
+
+/**
+ * Frame-time distribution over a sliding window of the last {@link #getWindowSize()} frames.
+ * Samples fall into fixed 0.1 ms buckets up to 100 ms (slower frames share the last bucket),
+ * so recording is two array writes and percentiles are one pass over the buckets - nothing is
+ * allocated or sorted per sample.
+ */
+public final class FrameTimeHistogram {
+    public static final int DEFAULT_WINDOW_SIZE = 600;
+    private static final long BUCKET_NANOS = 100_000L;
+    private static final int BUCKET_COUNT = 1000;
+
+    private final int[] counts = new int[BUCKET_COUNT];
+    private final short[] window;   // Bucket of each sample still in the window, oldest at head once full
+    private int head = 0;
+    private int size = 0;
+
+    public FrameTimeHistogram() {
+        this(DEFAULT_WINDOW_SIZE);
+    }
+
+    public FrameTimeHistogram(int windowSize) {
+        if (windowSize <= 0) {
+            throw new IllegalArgumentException("Window size must be positive: " + windowSize);
+        }
+        this.window = new short[windowSize];
+    }
+
+    public void record(long frameNanos) {
+        int bucket = (int) Math.min(Math.max(frameNanos, 0L) / BUCKET_NANOS, BUCKET_COUNT - 1);
+        if (size == window.length) {
+            counts[window[head]]--;
+        } else {
+            size++;
+        }
+        window[head] = (short) bucket;
+        counts[bucket]++;
+        head = (head + 1) % window.length;
+    }
+
+    /**
+     * Frame time in milliseconds that {@code fraction} (0-1) of the windowed frames stayed within.
+     * Resolved to the upper edge of a 0.1 ms bucket; 0 without samples.
+     */
+    public float getPercentileMillis(double fraction) {
+        if (size == 0) return 0.0f;
+
+        int target = Math.max(1, (int) Math.ceil(Math.min(1.0, Math.max(0.0, fraction)) * size));
+        int seen = 0;
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            seen += counts[bucket];
+            if (seen >= target) return bucketMillis(bucket);
+        }
+        return bucketMillis(BUCKET_COUNT - 1);
+    }
+
+    public float getMaxMillis() {
+        for (int bucket = BUCKET_COUNT - 1; bucket >= 0; bucket--) {
+            if (counts[bucket] != 0) return bucketMillis(bucket);
+        }
+        return 0.0f;
+    }
+
+    private static float bucketMillis(int bucket) {
+        return (bucket + 1) * (BUCKET_NANOS / 1_000_000.0f);
+    }
+
+    public int getSampleCount() {
+        return size;
+    }
+
+    public int getWindowSize() {
+        return window.length;
+    }
+
+    public void clear() {
+        Arrays.fill(counts, 0);
+        head = 0;
+        size = 0;
+    }
+}
@@ -0,0 +1,104 @@
+package com.sypztep.canval.graphic;
+
+import com.sypztep.canval.graphic.gl.GlStateManager;
+import com.sypztep.canval.graphic.gl.QuadIndexBuffer;
+import com.sypztep.canval.graphic.gl.StreamingVertexBuffer;
+import com.sypztep.canval.graphic.shader.ShaderManager;
+import com.sypztep.canval.graphic.shader.ShaderProgram;
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GLCapabilities;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.lwjgl.opengl.GL31.*;
+import static org.lwjgl.system.MemoryUtil.memCopy;
+
+/**
+ * Draws {@link SpriteInstances} as one static unit quad instanced once per sprite.
+ * The CPU only copies each 32 byte record into the streaming buffer; corners, rotation
+ * and UVs are expanded in the vertex shader.
+ */
+final class InstancedRenderer {
+    private static final Logger LOGGER = LoggerFactory.getLogger(InstancedRenderer.class);
+
+    private static final int ATTRIBUTE_CORNER = 0;
+    private static final int ATTRIBUTE_RECT = 1;
+    private static final int ATTRIBUTE_UV_RECT = 2;
+    private static final int ATTRIBUTE_COLOR = 3;
+    private static final int ATTRIBUTE_ROTATION = 4;
+    private static final int ATTRIBUTE_MASK = 0b11111;
+    // Everything except the corner advances once per instance
+    private static final int INSTANCE_ATTRIBUTE_MASK = 0b11110;
+
+    private final ShaderProgram shader;
+    private final int cornerBufferId;
+
+    InstancedRenderer() {
+        shader = ShaderManager.load("instanced", null,
+                "a_Corner", "a_Rect", "a_UvRect", "a_Color", "a_Rotation");
+        shader.bind();
+        shader.getUniform("u_Texture").set(0);
+        GlStateManager.useProgram(0);
+
+        // Same corner order as the quad index buffer: top-left, top-right, bottom-right, bottom-left
+        cornerBufferId = GlStateManager.genBuffer();
+        GlStateManager.bindVertexBuffer(cornerBufferId);
+        glBufferData(GL_ARRAY_BUFFER, new float[]{0, 0, 1, 0, 1, 1, 0, 1}, GL_STATIC_DRAW);
+
+        LOGGER.debug("Instanced sprite renderer created");
+    }
+
+    /**
+     * Check whether the context has instanced arrays and instanced draws
+     */
+    static boolean isSupported() {
+        GLCapabilities caps = GL.getCapabilities();
+        return caps.OpenGL33;
+    }
+
+    /**
+     * Draw every sprite in {@code instances} with one texture. Blend state and the
+     * model-view matrix must already be set.
+     *
+     * @return number of draw calls issued
+     */
+    int draw(int textureId, SpriteInstances instances, StreamingVertexBuffer stream, QuadIndexBuffer indexBuffer) {
+        shader.bind();
+        GlStateManager.setVertexAttribArrays(ATTRIBUTE_MASK);
+        GlStateManager.setVertexAttribDivisors(INSTANCE_ATTRIBUTE_MASK);
+        GlStateManager.bindTexture(0, textureId);
+        indexBuffer.bind();
+
+        GlStateManager.bindVertexBuffer(cornerBufferId);
+        glVertexAttribPointer(ATTRIBUTE_CORNER, 2, GL_FLOAT, false, 0, 0L);
+
+        int maxPerDraw = stream.getCapacity() / SpriteInstances.INSTANCE_STRIDE;
+        int drawCalls = 0;
+        for (int start = 0; start < instances.size(); start += maxPerDraw) {
+            int count = Math.min(maxPerDraw, instances.size() - start);
+            int bytes = count * SpriteInstances.INSTANCE_STRIDE;
+
+            long address = stream.begin(bytes);
+            memCopy(instances.address() + (long) start * SpriteInstances.INSTANCE_STRIDE, address, bytes);
+            long offset = stream.end();
+
+            int stride = SpriteInstances.INSTANCE_STRIDE;
+            glVertexAttribPointer(ATTRIBUTE_RECT, 4, GL_FLOAT, false, stride, offset);
+            glVertexAttribPointer(ATTRIBUTE_UV_RECT, 4, GL_UNSIGNED_SHORT, true, stride, offset + SpriteInstances.UV_OFFSET);
+            glVertexAttribPointer(ATTRIBUTE_COLOR, 4, GL_UNSIGNED_BYTE, true, stride, offset + SpriteInstances.COLOR_OFFSET);
+            glVertexAttribPointer(ATTRIBUTE_ROTATION, 1, GL_FLOAT, false, stride, offset + SpriteInstances.ROTATION_OFFSET);
+
+            glDrawElementsInstanced(GL_TRIANGLES, QuadIndexBuffer.INDICES_PER_QUAD, QuadIndexBuffer.INDEX_TYPE, 0L, count);
+            drawCalls++;
+        }
+
+        GlStateManager.useProgram(0);
+        GlStateManager.invalidateColor();
+        return drawCalls;
+    }
+
+    void cleanup() {
+        shader.cleanup();
+        GlStateManager.deleteBuffer(cornerBufferId);
+    }
+}
@@ -0,0 +1,20 @@
+package com.sypztep.canval.graphic;
+
+/**
+ * Border sizes, in texels of the source texture, for {@link DrawContext#drawNineSlice}.
+ * Corners keep this size on screen, edges stretch along one axis and the center along both.
+ */
+public record NineSliceInsets(int left, int top, int right, int bottom) {
+    public NineSliceInsets {
+        if (left < 0 || top < 0 || right < 0 || bottom < 0) {
+            throw new IllegalArgumentException("Nine-slice insets must not be negative");
+        }
+    }
+
+    /**
+     * Same border on all four sides
+     */
+    public static NineSliceInsets of(int border) {
+        return new NineSliceInsets(border, border, border, border);
+    }
+}
@@ -0,0 +1,85 @@
+package com.sypztep.canval.graphic;
+
+import com.sypztep.canval.graphic.gl.RenderTarget;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Texture storage for {@link CachedPanel}s, kept under a byte budget with least-recently-used eviction
+ */
+final class PanelCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PanelCache.class);
+
+    // Access-ordered: iteration starts at the panel drawn longest ago
+    private final LinkedHashMap<CachedPanel, RenderTarget> targets = new LinkedHashMap<>(16, 0.75f, true);
+    private long usedBytes = 0;
+
+    /**
+     * Get the panel's texture, or null if it has none. Counts as a use for LRU purposes.
+     */
+    RenderTarget get(CachedPanel panel) {
+        RenderTarget target = targets.get(panel);
+        if (target != null && (target.getWidth() != panel.getWidth() || target.getHeight() != panel.getHeight())) {
+            remove(panel);
+            return null;
+        }
+        return target;
+    }
+
+    /**
+     * Create a texture for the panel, evicting other panels to stay within {@code budget}
+     */
+    RenderTarget allocate(CachedPanel panel, long budget) {
+        remove(panel);
+
+        RenderTarget target = new RenderTarget(panel.getWidth(), panel.getHeight());
+        targets.put(panel, target);
+        usedBytes += target.getMemorySize();
+
+        evict(panel, budget);
+        return target;
+    }
+
+    private void evict(CachedPanel keep, long budget) {
+        for (Iterator<Map.Entry<CachedPanel, RenderTarget>> it = targets.entrySet().iterator();
+             usedBytes > budget && it.hasNext(); ) {
+            Map.Entry<CachedPanel, RenderTarget> entry = it.next();
+            if (entry.getKey() == keep) continue;
+
+            usedBytes -= entry.getValue().getMemorySize();
+            entry.getValue().cleanup();
+            entry.getKey().markDirty();
+            it.remove();
+            LOGGER.debug("Evicted cached panel texture {}x{}", entry.getKey().getWidth(), entry.getKey().getHeight());
+        }
+    }
+
+    void remove(CachedPanel panel) {
+        RenderTarget target = targets.remove(panel);
+        if (target != null) {
+            usedBytes -= target.getMemorySize();
+            target.cleanup();
+            panel.markDirty();
+        }
+    }
+
+    long getUsedBytes() {
+        return usedBytes;
+    }
+
+    int size() {
+        return targets.size();
+    }
+
+    void cleanup() {
+        for (RenderTarget target : targets.values()) {
+            target.cleanup();
+        }
+        targets.clear();
+        usedBytes = 0;
+    }
+}
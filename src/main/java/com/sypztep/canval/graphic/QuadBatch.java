@@ -0,0 +1,112 @@
+package com.sypztep.canval.graphic;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+
+/**
+ * Quads queued between two flushes, stored as parallel arrays with 4 vertices per quad,
+ * already transformed to screen space. Holds no GL state, so filling and sorting a batch
+ * works without a context.
+ */
+final class QuadBatch {
+    private static final Logger LOGGER = LoggerFactory.getLogger(QuadBatch.class);
+
+    float[] positions; // x, y
+    float[] texCoords; // u, v
+    int[] colors;      // packed rgba
+    int[] textures;    // GL texture per quad
+    byte[] slots;      // texture slot per quad, assigned at flush
+    int quadCount = 0;
+
+    private final QuadSorter sorter = new QuadSorter();
+
+    QuadBatch(int initialQuads) {
+        int quads = Math.max(1, initialQuads);
+        positions = new float[quads * 4 * 2];
+        texCoords = new float[quads * 4 * 2];
+        colors = new int[quads * 4];
+        textures = new int[quads];
+        slots = new byte[quads];
+        sorter.ensureCapacity(quads);
+    }
+
+    /**
+     * Reserve the next quad and its sort key; fill its vertices with {@link #putVertex}
+     *
+     * @return index of the new quad
+     */
+    int addQuad(RenderLayer layer, BlendMode blend, int textureId) {
+        ensureCapacity(quadCount + 1);
+        int quad = quadCount++;
+        textures[quad] = textureId;
+        sorter.getKeys()[quad] = QuadSorter.key(layer, blend, textureId, quad);
+        return quad;
+    }
+
+    void putVertex(int vertex, float x, float y, float u, float v, int color) {
+        positions[vertex * 2] = x;
+        positions[vertex * 2 + 1] = y;
+        texCoords[vertex * 2] = u;
+        texCoords[vertex * 2 + 1] = v;
+        colors[vertex] = color;
+    }
+
+    /**
+     * Grow the arrays (doubling) so they can hold at least {@code quads} quads
+     */
+    void ensureCapacity(int quads) {
+        int vertices = quads * 4;
+        if (vertices <= colors.length) return;
+
+        int newVertices = Math.max(vertices, colors.length * 2);
+        positions = Arrays.copyOf(positions, newVertices * 2);
+        texCoords = Arrays.copyOf(texCoords, newVertices * 2);
+        colors = Arrays.copyOf(colors, newVertices);
+        textures = Arrays.copyOf(textures, newVertices / 4);
+        slots = Arrays.copyOf(slots, newVertices / 4);
+        sorter.ensureCapacity(newVertices / 4);
+        LOGGER.debug("Grew quad batch capacity to {} quads", newVertices / 4);
+    }
+
+    /**
+     * Sort the queued quads into draw order, see {@link QuadSorter#sort}
+     *
+     * @return quad indices in draw order; valid until the next call
+     */
+    int[] sort(int viewportWidth, int viewportHeight) {
+        return sorter.sort(positions, quadCount, viewportWidth, viewportHeight);
+    }
+
+    /**
+     * Keys of the last {@link #sort}, in the same order as the returned indices
+     */
+    long[] getSortedKeys() {
+        return sorter.getSortedKeys();
+    }
+
+    /**
+     * Quads ordered by the last {@link #sort}, see {@link QuadSorter#getSortedCount()}
+     */
+    int getSortedCount() {
+        return sorter.getSortedCount();
+    }
+
+    /**
+     * Drop the first {@code quads} quads, moving the rest to the front in their submission order
+     */
+    void removeFirst(int quads) {
+        int remaining = quadCount - quads;
+        System.arraycopy(positions, quads * 8, positions, 0, remaining * 8);
+        System.arraycopy(texCoords, quads * 8, texCoords, 0, remaining * 8);
+        System.arraycopy(colors, quads * 4, colors, 0, remaining * 4);
+        System.arraycopy(textures, quads, textures, 0, remaining);
+        sorter.removeFirst(quads, quadCount);
+        quadCount = remaining;
+    }
+
+    void clear() {
+        quadCount = 0;
+    }
+}
@@ -0,0 +1,233 @@
+package com.sypztep.canval.graphic;
+
+import java.util.Arrays;
+
+/**
+ * Orders a batch of quads by 64-bit sort key before it is drawn.
+ * <p>
+ * Key layout, most significant first:
+ * <pre>
+ *  63..61  layer     ({@link RenderLayer} ordinal)
+ *  60..45  group     (overlap depth inside the layer, filled in by {@link #sort})
+ *  44..43  blend     ({@link BlendMode} ordinal)
+ *  42..27  texture   (low 16 bits of the GL texture id)
+ *  26..0   sequence  (submission index)
+ * </pre>
+ * A quad's group is one higher than any earlier quad in the same layer it overlaps
+ * with a different texture or blend mode, so sorting by texture can never pull a quad
+ * in front of something it was drawn over. Overlap is tested on a coarse screen grid,
+ * which only ever over-estimates it.
+ * <p>
+ * When a quad would need a group above the 16 bits available, sorting stops short of it:
+ * {@link #getSortedCount()} reports how many quads were sorted, and the rest must be drawn
+ * after them as a batch of their own.
+ */
+final class QuadSorter {
+    private static final int LAYER_SHIFT = 61;
+    private static final int GROUP_SHIFT = 45;
+    private static final int BLEND_SHIFT = 43;
+    private static final int TEXTURE_SHIFT = 27;
+
+    private static final int MAX_GROUP = 0xFFFF;
+    private static final int TEXTURE_MASK = 0xFFFF;
+    private static final int SEQUENCE_MASK = (1 << TEXTURE_SHIFT) - 1;
+    // Blend + texture bits, compared to decide whether two overlapping quads may swap
+    private static final int STATE_MASK = (1 << (GROUP_SHIFT - TEXTURE_SHIFT)) - 1;
+    private static final int MIXED_STATE = -1;
+
+    // The sequence is already in submission order and the sort is stable, so only these bits are sorted
+    private static final int SORTED_BITS_SHIFT = TEXTURE_SHIFT;
+    private static final int RADIX_PASSES = (64 - SORTED_BITS_SHIFT + 7) / 8;
+
+    private static final int CELL_SIZE = 64;
+    private static final int LAYER_COUNT = RenderLayer.values().length;
+
+    private long[] keys = new long[0];
+    private long[] scratchKeys = new long[0];
+    private int[] order = new int[0];
+    private int[] scratchOrder = new int[0];
+    private long[] sortedKeys;
+    private int sortedCount;
+    private final int[] counts = new int[256];
+
+    // Overlap grid, one set of cells per layer. A stamp per cell avoids clearing between flushes.
+    private int gridColumns;
+    private int gridRows;
+    private int[] cellGroups = new int[0];
+    private int[] cellStates = new int[0];
+    private int[] cellStamps = new int[0];
+    private int stamp = 0;
+
+    static long key(RenderLayer layer, BlendMode blend, int textureId, int sequence) {
+        return ((long) layer.ordinal() << LAYER_SHIFT)
+                | ((long) blend.ordinal() << BLEND_SHIFT)
+                | ((long) (textureId & TEXTURE_MASK) << TEXTURE_SHIFT)
+                | (sequence & SEQUENCE_MASK);
+    }
+
+    static int blendOrdinal(long key) {
+        return (int) (key >>> BLEND_SHIFT) & 0b11;
+    }
+
+    /**
+     * Submission buffer, index = quad
+     */
+    long[] getKeys() {
+        return keys;
+    }
+
+    void ensureCapacity(int quads) {
+        if (quads <= keys.length) return;
+
+        int capacity = Math.max(quads, keys.length * 2);
+        keys = Arrays.copyOf(keys, capacity);
+        scratchKeys = new long[capacity];
+        order = new int[capacity];
+        scratchOrder = new int[capacity];
+    }
+
+    /**
+     * Assign overlap groups and sort the first {@code quadCount} keys, or the leading part of them
+     * that fits below the group limit (see {@link #getSortedCount()}).
+     *
+     * @param positions transformed vertex positions, 4 vertices (8 floats) per quad
+     * @return quad indices in draw order; valid until the next call
+     */
+    int[] sort(float[] positions, int quadCount, int viewportWidth, int viewportHeight) {
+        quadCount = assignGroups(positions, quadCount, viewportWidth, viewportHeight);
+        sortedCount = quadCount;
+
+        for (int i = 0; i < quadCount; i++) order[i] = i;
+
+        long[] srcKeys = keys, dstKeys = scratchKeys;
+        int[] srcOrder = order, dstOrder = scratchOrder;
+        for (int pass = 0; pass < RADIX_PASSES; pass++) {
+            int shift = SORTED_BITS_SHIFT + pass * 8;
+
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < quadCount; i++) {
+                counts[(int) (srcKeys[i] >>> shift) & 0xFF]++;
+            }
+            // Every key shares this byte (usually layer or blend) - nothing to reorder
+            if (counts[(int) (srcKeys[0] >>> shift) & 0xFF] == quadCount) continue;
+
+            int offset = 0;
+            for (int bucket = 0; bucket < 256; bucket++) {
+                int count = counts[bucket];
+                counts[bucket] = offset;
+                offset += count;
+            }
+            for (int i = 0; i < quadCount; i++) {
+                int destination = counts[(int) (srcKeys[i] >>> shift) & 0xFF]++;
+                dstKeys[destination] = srcKeys[i];
+                dstOrder[destination] = srcOrder[i];
+            }
+
+            long[] keySwap = srcKeys; srcKeys = dstKeys; dstKeys = keySwap;
+            int[] orderSwap = srcOrder; srcOrder = dstOrder; dstOrder = orderSwap;
+        }
+
+        sortedKeys = srcKeys;
+        return srcOrder;
+    }
+
+    /**
+     * Keys of the last {@link #sort}, in the same order as the returned indices
+     */
+    long[] getSortedKeys() {
+        return sortedKeys;
+    }
+
+    /**
+     * Quads ordered by the last {@link #sort}; less than requested when overlap groups ran out
+     */
+    int getSortedCount() {
+        return sortedCount;
+    }
+
+    /**
+     * Drop the first {@code quads} keys and renumber the remaining ones from zero
+     */
+    void removeFirst(int quads, int quadCount) {
+        for (int i = quads; i < quadCount; i++) {
+            keys[i - quads] = (keys[i] & ~SEQUENCE_MASK) | (i - quads);
+        }
+    }
+
+    /**
+     * @return number of leading quads that received a group
+     */
+    private int assignGroups(float[] positions, int quadCount, int viewportWidth, int viewportHeight) {
+        resizeGrid(viewportWidth, viewportHeight);
+        stamp++;
+
+        int layerCells = gridColumns * gridRows;
+        for (int quad = 0; quad < quadCount; quad++) {
+            long key = keys[quad];
+            int state = (int) (key >>> TEXTURE_SHIFT) & STATE_MASK;
+            int layerBase = (int) (key >>> LAYER_SHIFT) * layerCells;
+
+            int base = quad * 8;
+            float minX = Math.min(Math.min(positions[base], positions[base + 2]), Math.min(positions[base + 4], positions[base + 6]));
+            float maxX = Math.max(Math.max(positions[base], positions[base + 2]), Math.max(positions[base + 4], positions[base + 6]));
+            float minY = Math.min(Math.min(positions[base + 1], positions[base + 3]), Math.min(positions[base + 5], positions[base + 7]));
+            float maxY = Math.max(Math.max(positions[base + 1], positions[base + 3]), Math.max(positions[base + 5], positions[base + 7]));
+
+            int column0 = cellColumn(minX), column1 = cellColumn(maxX);
+            int row0 = cellRow(minY), row1 = cellRow(maxY);
+
+            int group = 0;
+            for (int row = row0; row <= row1; row++) {
+                for (int column = column0; column <= column1; column++) {
+                    int cell = layerBase + row * gridColumns + column;
+                    if (cellStamps[cell] != stamp) continue;
+                    int required = cellStates[cell] == state ? cellGroups[cell] : cellGroups[cell] + 1;
+                    if (required > group) group = required;
+                }
+            }
+            // Clamping would let this quad sort in front of one it overlaps
+            if (group > MAX_GROUP) return quad;
+
+            for (int row = row0; row <= row1; row++) {
+                for (int column = column0; column <= column1; column++) {
+                    int cell = layerBase + row * gridColumns + column;
+                    if (cellStamps[cell] != stamp || group > cellGroups[cell]) {
+                        cellStamps[cell] = stamp;
+                        cellGroups[cell] = group;
+                        cellStates[cell] = state;
+                    } else if (cellStates[cell] != state) {
+                        cellStates[cell] = MIXED_STATE;
+                    }
+                }
+            }
+
+            keys[quad] = key | ((long) group << GROUP_SHIFT);
+        }
+        return quadCount;
+    }
+
+    private void resizeGrid(int viewportWidth, int viewportHeight) {
+        int columns = Math.max(1, (viewportWidth + CELL_SIZE - 1) / CELL_SIZE);
+        int rows = Math.max(1, (viewportHeight + CELL_SIZE - 1) / CELL_SIZE);
+        if (columns == gridColumns && rows == gridRows) return;
+
+        gridColumns = columns;
+        gridRows = rows;
+        int cells = columns * rows * LAYER_COUNT;
+        cellGroups = new int[cells];
+        cellStates = new int[cells];
+        cellStamps = new int[cells];
+        stamp = 0;
+    }
+
+    // Off-screen parts clamp to the border cells, which can only add overlap
+    private int cellColumn(float x) {
+        int column = (int) (x / CELL_SIZE);
+        return column < 0 ? 0 : Math.min(column, gridColumns - 1);
+    }
+
+    private int cellRow(float y) {
+        int row = (int) (y / CELL_SIZE);
+        return row < 0 ? 0 : Math.min(row, gridRows - 1);
+    }
+}
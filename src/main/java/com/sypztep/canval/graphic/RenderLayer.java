@@ -0,0 +1,13 @@
+package com.sypztep.canval.graphic;
+
+/**
+ * Draw layers, from back to front. Between two flushes, everything in a layer is drawn before
+ * anything in the next one, regardless of the order the draw calls were made in; see
+ * {@link DrawContext#setLayer} for the calls that flush.
+ */
+public enum RenderLayer {
+    BACKGROUND,
+    CHARACTERS,
+    UI,
+    OVERLAY
+}
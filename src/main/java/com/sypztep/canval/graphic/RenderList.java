@@ -0,0 +1,173 @@
+package com.sypztep.canval.graphic;
+
+import com.sypztep.canval.graphic.font.FontAtlas;
+import com.sypztep.canval.graphic.font.FontAtlasManager;
+import com.sypztep.canval.graphic.gl.GlStateManager;
+import org.lwjgl.system.MemoryUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.lwjgl.opengl.GL15.*;
+
+/**
+ * Retained vertex data recorded from {@link DrawContext} calls.
+ * Record once with {@link DrawContext#beginRecording(RenderList)} / {@link DrawContext#endRecording()},
+ * then replay every frame with {@link DrawContext#drawList(RenderList, org.joml.Matrix4f)}.
+ * <p>
+ * A list never updates itself: call {@link #invalidate()} when its content changes
+ * (new text, moved element) and record it again. Segments that sample a font atlas carry the
+ * atlas generation they were recorded under; once an atlas grows the list reports itself
+ * invalid and {@link DrawContext#drawList} skips it until it is recorded again.
+ */
+public class RenderList {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RenderList.class);
+    private static final int INITIAL_STAGING_SIZE = 64 * 1024;
+
+    /**
+     * Range of quads drawn with one set of texture slots and one blend mode.
+     * {@code atlasGeneration} is {@link FontAtlas#getGeneration()} at record time, or -1 without glyphs.
+     */
+    record Segment(int firstQuad, int quadCount, int[] textures, BlendMode blend, int atlasGeneration) {
+    }
+
+    private final List<Segment> segments = new ArrayList<>();
+    private ByteBuffer staging;
+    private int quadCount = 0;
+    private int bufferId = 0;
+    private boolean valid = false;
+    private boolean recording = false;
+
+    /**
+     * Start a new recording, dropping any previous content
+     */
+    void begin() {
+        if (recording) {
+            throw new IllegalStateException("RenderList is already recording");
+        }
+        segments.clear();
+        quadCount = 0;
+        valid = false;
+        recording = true;
+    }
+
+    /**
+     * Reserve room for {@code quads} quads drawn with the given texture slots and blend mode.
+     *
+     * @return address to write {@code quads * 4} interleaved vertices to
+     */
+    long appendSegment(int quads, int[] slotTextures, int slotCount, BlendMode blend) {
+        int required = (quadCount + quads) * 4 * RenderSystem.VERTEX_STRIDE;
+        if (staging == null) {
+            staging = MemoryUtil.memAlloc(Math.max(INITIAL_STAGING_SIZE, required));
+        } else if (required > staging.capacity()) {
+            staging = MemoryUtil.memRealloc(staging, Math.max(required, staging.capacity() * 2));
+        }
+
+        int[] textures = new int[slotCount];
+        System.arraycopy(slotTextures, 0, textures, 0, slotCount);
+        int atlasGeneration = -1;
+        for (int texture : textures) {
+            if (FontAtlasManager.getInstance().isAtlasTexture(texture)) {
+                atlasGeneration = FontAtlas.getGeneration();
+                break;
+            }
+        }
+        segments.add(new Segment(quadCount, quads, textures, blend, atlasGeneration));
+
+        long address = MemoryUtil.memAddress(staging) + (long) quadCount * 4 * RenderSystem.VERTEX_STRIDE;
+        quadCount += quads;
+        return address;
+    }
+
+    /**
+     * Finish recording. With {@code upload} the vertices move into a static VBO and
+     * the CPU copy is released; otherwise they stay in memory for immediate mode replay.
+     */
+    void end(boolean upload) {
+        recording = false;
+        valid = true;
+
+        if (!upload || quadCount == 0) return;
+
+        if (bufferId == 0) {
+            bufferId = GlStateManager.genBuffer();
+        }
+        GlStateManager.bindVertexBuffer(bufferId);
+        nglBufferData(GL_ARRAY_BUFFER, (long) quadCount * 4 * RenderSystem.VERTEX_STRIDE,
+                MemoryUtil.memAddress(staging), GL_STATIC_DRAW);
+
+        MemoryUtil.memFree(staging);
+        staging = null;
+
+        LOGGER.debug("Recorded RenderList with {} quads in {} segments", quadCount, segments.size());
+    }
+
+    /**
+     * Mark the recorded content as stale. The list is skipped until it is recorded again.
+     */
+    public void invalidate() {
+        valid = false;
+    }
+
+    /**
+     * Whether the list holds a finished recording that can be drawn.
+     * Becomes false on its own once a font atlas used by the list has grown.
+     */
+    public boolean isValid() {
+        if (valid && hasStaleGlyphs()) {
+            valid = false;
+            LOGGER.debug("RenderList invalidated: a font atlas grew since it was recorded");
+        }
+        return valid;
+    }
+
+    private boolean hasStaleGlyphs() {
+        int generation = FontAtlas.getGeneration();
+        for (int i = 0; i < segments.size(); i++) {
+            int recorded = segments.get(i).atlasGeneration();
+            if (recorded != -1 && recorded != generation) return true;
+        }
+        return false;
+    }
+
+    public boolean isRecording() {
+        return recording;
+    }
+
+    public int getQuadCount() {
+        return quadCount;
+    }
+
+    List<Segment> getSegments() {
+        return segments;
+    }
+
+    int getBufferId() {
+        return bufferId;
+    }
+
+    ByteBuffer getStaging() {
+        return staging;
+    }
+
+    /**
+     * Release the GPU buffer and any CPU-side copy
+     */
+    public void cleanup() {
+        if (bufferId != 0) {
+            GlStateManager.deleteBuffer(bufferId);
+            bufferId = 0;
+        }
+        if (staging != null) {
+            MemoryUtil.memFree(staging);
+            staging = null;
+        }
+        segments.clear();
+        quadCount = 0;
+        valid = false;
+    }
+}
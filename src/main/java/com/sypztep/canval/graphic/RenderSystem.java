@@ -1,60 +1,242 @@
 package com.sypztep.canval.graphic;
 
+import com.sypztep.canval.CanvalConfig;
+import com.sypztep.canval.graphic.FrameStats.FlushReason;
+import com.sypztep.canval.graphic.font.FontAtlasManager;
 import com.sypztep.canval.graphic.gl.GlStateManager;
+import com.sypztep.canval.graphic.gl.GpuTimer;
+import com.sypztep.canval.graphic.gl.QuadIndexBuffer;
+import com.sypztep.canval.graphic.gl.RenderTarget;
+import com.sypztep.canval.graphic.gl.RenderTargetPool;
+import com.sypztep.canval.graphic.gl.StreamingVertexBuffer;
+import com.sypztep.canval.graphic.shader.ShaderManager;
+import com.sypztep.canval.graphic.shader.ShaderProgram;
 import com.sypztep.canval.util.ResourceLocation;
 import com.sypztep.canval.util.identifier.Registries;
 import com.sypztep.canval.util.math.MatrixStack;
 import com.sypztep.canval.util.resource.TextureResource;
+import org.joml.Matrix4f;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
-import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL20.*;
+import static org.lwjgl.system.MemoryUtil.memAddress;
+import static org.lwjgl.system.MemoryUtil.memGetFloat;
+import static org.lwjgl.system.MemoryUtil.memGetInt;
+import static org.lwjgl.system.MemoryUtil.memPutByte;
+import static org.lwjgl.system.MemoryUtil.memPutFloat;
+import static org.lwjgl.system.MemoryUtil.memPutInt;
 
 /**
  * High-level rendering system that handles batching and automatic state management.
  * Users don't need to worry about OpenGL state - just call draw methods.
+ * <p>
+ * Every quad shares one vertex layout (position, UV, packed RGBA color). Untextured
+ * shapes sample a built-in 1x1 white texel, so rects, textures and tinted glyphs
+ * all land in the same batch.
+ * <p>
+ * Batch storage is a set of primitive arrays (struct-of-arrays, one slot per vertex)
+ * that grow on demand and are reused every frame, so steady-state drawing allocates nothing.
+ * <p>
+ * Vertices are transformed by the current {@link MatrixStack} entry on the CPU when a quad
+ * is submitted, so push/translate/pop never break a batch and the GL model-view matrix
+ * stays identity for the whole frame. The transformed bounds are also tested against the
+ * viewport at that point, and quads that cannot be visible are dropped before anything is stored.
+ * Inside {@link #pushClip} the same step cuts axis-aligned quads to the clip rect (UVs included);
+ * only rotated quads need the GL scissor test, which splits the batch.
+ * <p>
+ * Quads are not drawn in submission order: each carries a 64-bit sort key (layer, overlap
+ * group, blend mode, texture, sequence) and the batch is radix sorted when it is flushed,
+ * so quads sharing a texture end up next to each other wherever that cannot change the
+ * result on screen. See {@link QuadSorter}.
+ * <p>
+ * A draw call binds up to {@code maxTextureSlots} textures to separate units and each vertex
+ * carries the slot it samples from, so a new draw call only starts when every slot is taken
+ * or the blend mode changes. The immediate mode fallback has no shader and keeps a single slot.
+ * <p>
+ * While a {@link RenderList} is recording, flushed batches are captured into the list
+ * instead of being drawn, and {@link #drawList(RenderList, Matrix4f)} replays them later.
  */
-public class RenderSystem {
+public final class RenderSystem {
     private static final Logger LOGGER = LoggerFactory.getLogger(RenderSystem.class);
 
+    // Interleaved vertex layout: x, y, u, v (floats) + rgba (4 unsigned bytes) + texture slot (1 byte, padded)
+    public static final int VERTEX_STRIDE = 4 * Float.BYTES + 2 * Integer.BYTES;
+    private static final int UV_OFFSET = 2 * Float.BYTES;
+    private static final int COLOR_OFFSET = 4 * Float.BYTES;
+    private static final int SLOT_OFFSET = COLOR_OFFSET + Integer.BYTES;
+
+    // Attribute locations bound in the batch shader
+    static final int ATTRIBUTE_POSITION = 0;
+    static final int ATTRIBUTE_TEX_COORD = 1;
+    static final int ATTRIBUTE_COLOR = 2;
+    static final int ATTRIBUTE_TEX_SLOT = 3;
+    static final int ATTRIBUTE_MASK = 0b1111;
+
+    // The batch fragment shader is written for at most this many samplers
+    private static final int MAX_SHADER_TEXTURE_SLOTS = 16;
+    private static final int STREAM_BUFFER_SIZE = 4 * 1024 * 1024;
+    private static final int INITIAL_QUAD_CAPACITY = 1024;
+    private static final boolean LITTLE_ENDIAN = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
+
+    public static final int WHITE = packColor(1.0f, 1.0f, 1.0f, 1.0f);
+    private static final Matrix4f IDENTITY = new Matrix4f();
+
     private final MatrixStack matrices = new MatrixStack();
 
-    // Batched rendering
-    private final List<TexturedQuad> textureQuads = new ArrayList<>();
-    private final List<ColoredQuad> coloredQuads = new ArrayList<>();
-    private int currentTextureId = -1;
+    // Buffered rendering (null when falling back to immediate mode)
+    private final boolean immediateMode;
+    private final StreamingVertexBuffer vertexBuffer;
+    private final QuadIndexBuffer indexBuffer;
+    private final ShaderProgram batchShader;
+    private final InstancedRenderer instancedRenderer; // null without instancing support
+    private final int whiteTextureId;
 
-    // Rendering data structures
-    private static class TexturedQuad {
-        float x1, y1, x2, y2, z;
-        float u1, v1, u2, v2;
-        int textureId;
+    // Batched rendering, sorted into draw order at each flush
+    private final QuadBatch batch = new QuadBatch(INITIAL_QUAD_CAPACITY);
 
-        TexturedQuad(float x1, float y1, float x2, float y2, float z,
-                     float u1, float v1, float u2, float v2, int textureId) {
-            this.x1 = x1; this.y1 = y1; this.x2 = x2; this.y2 = y2; this.z = z;
-            this.u1 = u1; this.v1 = v1; this.u2 = u2; this.v2 = v2;
-            this.textureId = textureId;
-        }
-    }
+    // Draw ordering
+    private RenderLayer currentLayer = RenderLayer.UI;
+    private BlendMode currentBlend = BlendMode.ALPHA;
+    private static final BlendMode[] BLEND_MODES = BlendMode.values();
+    private static final RenderLayer[] LAYERS = RenderLayer.values();
 
-    private static class ColoredQuad {
-        float x1, y1, x2, y2;
-        float r, g, b, a;
+    // Textures bound for the current draw call, index = texture unit
+    private final int maxTextureSlots;
+    private final int[] slotTextures;
+    private int slotCount = 0;
 
-        ColoredQuad(float x1, float y1, float x2, float y2, float r, float g, float b, float a) {
-            this.x1 = x1; this.y1 = y1; this.x2 = x2; this.y2 = y2;
-            this.r = r; this.g = g; this.b = b; this.a = a;
-        }
+    // Culling: screen-space rectangle quads must touch to be kept
+    private boolean cullingEnabled = true;
+    private float cullMinX, cullMinY, cullMaxX, cullMaxY;
+    private int submittedQuads = 0;
+    private int culledQuads = 0;
+    private int lastFrameSubmittedQuads = 0;
+    private int lastFrameCulledQuads = 0;
+
+    private final FrameStats stats = new FrameStats();
+    private final GpuTimer gpuTimer; // null unless GPU timing is enabled and supported
+
+    // Clip stack: screen-space min x, min y, max x, max y per level
+    private float[] clipStack = new float[4 * 8];
+    private int clipDepth = 0;
+    // Swapped in for clipStack while a cached panel repaints, one per nesting level
+    private final List<float[]> panelClipStacks = new ArrayList<>();
+    private int panelDepth = 0;
+    // Scissor rect the pending batch is drawn with (only for rotated quads under a clip)
+    private final float[] batchScissor = new float[4];
+    private boolean batchScissored = false;
+
+    // Offscreen layers (pool is null without framebuffer support)
+    private final RenderTargetPool targetPool;
+    private final List<RenderTarget> layerStack = new ArrayList<>();
+    private final List<RenderTarget> pendingReleases = new ArrayList<>();
+    private boolean warnedNoLayers = false;
+
+    // Cached panel textures (null without framebuffer support)
+    private final PanelCache panelCache;
+
+    // Nine-slice UV edges keyed by the caller's insets object, then chained per texture
+    private final Map<NineSliceInsets, NineSliceUvs> nineSliceUvs = new HashMap<>();
+    private final float[] sliceXs = new float[4];
+    private final float[] sliceYs = new float[4];
+
+    /**
+     * UV edges u0..u3, v0..v3 of one texture; insets are rarely shared by more than a couple of textures
+     */
+    private record NineSliceUvs(int textureId, float[] uvs, NineSliceUvs next) {
     }
 
+    // Shape primitives: cached outlines and per-draw screen-space scratch
+    private final ShapeCache shapeCache = new ShapeCache();
+    private float[] shapeXs = new float[64];
+    private float[] shapeYs = new float[64];
+    private int[] shapeColors = new int[64];
+    private final float[] linePoints = new float[8];
+    private final float[] submitCorners = new float[8];
+    private static final float[] RECT_OUTLINE = {0, 0, 0, 0, 1, 0, 0, 0, 1, 1, 0, 0, 0, 1, 0, 0};
+
+    // Retained rendering
+    private RenderList recordingList;
+    private final Matrix4f listTransform = new Matrix4f();
+    private final Matrix4f instanceTransform = new Matrix4f();
+
     public RenderSystem() {
+        this.immediateMode = !GlStateManager.isShaderPipeline();
+
+        if (immediateMode) {
+            this.vertexBuffer = null;
+            this.indexBuffer = null;
+            this.batchShader = null;
+            this.instancedRenderer = null;
+            this.maxTextureSlots = 1;
+            LOGGER.info("RenderSystem using immediate mode rendering");
+        } else {
+            this.vertexBuffer = new StreamingVertexBuffer(STREAM_BUFFER_SIZE);
+            this.indexBuffer = new QuadIndexBuffer();
+            this.maxTextureSlots = Math.min(GlStateManager.getMaxTextureUnits(), MAX_SHADER_TEXTURE_SLOTS);
+            this.batchShader = createBatchShader(maxTextureSlots);
+            this.instancedRenderer = InstancedRenderer.isSupported() ? new InstancedRenderer() : null;
+            LOGGER.info("RenderSystem using streaming vertex buffers with {} texture slots", maxTextureSlots);
+        }
+        this.slotTextures = new int[maxTextureSlots];
+
+        this.whiteTextureId = createWhiteTexture();
+        this.targetPool = RenderTarget.isSupported() ? new RenderTargetPool() : null;
+        this.panelCache = targetPool != null ? new PanelCache() : null;
+        FontAtlasManager.getInstance().setGrowthListener(() -> flush(FlushReason.ATLAS_GROWTH));
+
+        if (CanvalConfig.isGpuTimingEnabled() && !GpuTimer.isSupported()) {
+            LOGGER.info("GPU timing requested but timer queries are unavailable, continuing without it");
+        }
+        this.gpuTimer = CanvalConfig.isGpuTimingEnabled() && GpuTimer.isSupported() ? new GpuTimer() : null;
+        if (gpuTimer != null) {
+            FontAtlasManager.getInstance().setUploadListeners(() -> gpuTimer.begin(GpuTimer.Pass.TEXT), gpuTimer::end);
+        }
+
         LOGGER.debug("RenderSystem created");
     }
 
+    /**
+     * Compile the batch shader for the given number of sampler slots and point
+     * each sampler at its texture unit
+     */
+    private static ShaderProgram createBatchShader(int textureSlots) {
+        ShaderProgram shader = ShaderManager.load("batch", "#define MAX_TEXTURE_SLOTS " + textureSlots,
+                "a_Position", "a_TexCoord", "a_Color", "a_TexSlot");
+
+        int[] units = new int[textureSlots];
+        for (int i = 0; i < textureSlots; i++) units[i] = i;
+
+        shader.bind();
+        shader.getUniform("u_Textures").set(units);
+        GlStateManager.useProgram(0);
+
+        return shader;
+    }
+
+    /**
+     * Create the 1x1 white texture that untextured quads sample from
+     */
+    private static int createWhiteTexture() {
+        int textureId = GlStateManager.genTexture();
+        GlStateManager.bindTexture(textureId);
+
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+        glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA, 1, 1, 0, GL_RGBA, GL_UNSIGNED_BYTE, new int[]{0xFFFFFFFF});
+
+        return textureId;
+    }
+
     /**
      * Get the matrix stack for transformations
      */
@@ -67,14 +249,56 @@ public class RenderSystem {
      */
     public void beginFrame() {
         GlStateManager.beginFrame();
-        GlStateManager.markMatrixDirty();
+        stats.beginFrame();
+        if (gpuTimer != null) gpuTimer.beginFrame();
+        // Vertices arrive already transformed, so the model-view matrix is uploaded once per frame
+        GlStateManager.applyMatrix(IDENTITY, MatrixStack.IDENTITY_STAMP);
+        currentLayer = RenderLayer.UI;
+        currentBlend = BlendMode.ALPHA;
+
+        lastFrameSubmittedQuads = submittedQuads;
+        lastFrameCulledQuads = culledQuads;
+        submittedQuads = 0;
+        culledQuads = 0;
+
+        if (clipDepth != 0) {
+            LOGGER.warn("{} clip rect(s) left pushed at the end of the frame", clipDepth);
+            clipDepth = 0;
+        }
+        updateCullBounds();
+    }
+
+    /**
+     * Reset the culling rectangle to the viewport
+     */
+    private void updateCullBounds() {
+        cullMinX = 0;
+        cullMinY = 0;
+        cullMaxX = GlStateManager.getRenderWidth();
+        cullMaxY = GlStateManager.getRenderHeight();
+
+        if (clipDepth > 0) {
+            int clip = (clipDepth - 1) * 4;
+            cullMinX = Math.max(cullMinX, clipStack[clip]);
+            cullMinY = Math.max(cullMinY, clipStack[clip + 1]);
+            cullMaxX = Math.min(cullMaxX, clipStack[clip + 2]);
+            cullMaxY = Math.min(cullMaxY, clipStack[clip + 3]);
+        }
     }
 
     /**
      * End a rendering frame - flushes all batches
      */
     public void endFrame() {
-        flushAllBatches();
+        if (!layerStack.isEmpty()) {
+            LOGGER.warn("{} offscreen layer(s) left open at the end of the frame", layerStack.size());
+            while (!layerStack.isEmpty()) endLayer(1.0f);
+        }
+
+        flush(FlushReason.FRAME_END);
+        if (targetPool != null) targetPool.endFrame();
+        if (gpuTimer != null) stats.gpuTimes(gpuTimer);
+        stats.endFrame(culledQuads);
         GlStateManager.endFrame();
     }
 
@@ -106,15 +330,159 @@ public class RenderSystem {
         float v2 = (v + regionHeight) / textureHeight;
 
         // Add to batch
-        addTexturedQuad(x, y, x + displayWidth, y + displayHeight, 0,
-                u1, v1, u2, v2, textureResource.glTextureId());
+        addQuad(currentTransform(), x, y, x + displayWidth, y + displayHeight,
+                u1, v1, u2, v2, WHITE, textureResource.glTextureId());
+    }
+
+    /**
+     * Draw a texture stretched to (x, y, width, height) with its borders kept at their original size.
+     * The texture is resolved once and all nine parts go straight into the batch.
+     * If the area is smaller than the borders, the borders shrink proportionally.
+     */
+    public void drawNineSlice(ResourceLocation texture, float x, float y, float width, float height,
+                              NineSliceInsets insets) {
+        TextureResource textureResource = getTextureResource(texture);
+        if (textureResource == null || width <= 0 || height <= 0) return;
+
+        int textureId = textureResource.glTextureId();
+        float[] uvs = findNineSliceUvs(textureId, insets);
+        if (uvs == null) {
+            uvs = computeNineSliceUvs(textureResource.width(), textureResource.height(), insets);
+            nineSliceUvs.put(insets, new NineSliceUvs(textureId, uvs, nineSliceUvs.get(insets)));
+        }
+
+        float horizontal = insets.left() + insets.right();
+        float vertical = insets.top() + insets.bottom();
+        float scaleX = horizontal > width ? width / horizontal : 1.0f;
+        float scaleY = vertical > height ? height / vertical : 1.0f;
+
+        sliceXs[0] = x;
+        sliceXs[1] = x + insets.left() * scaleX;
+        sliceXs[2] = x + width - insets.right() * scaleX;
+        sliceXs[3] = x + width;
+        sliceYs[0] = y;
+        sliceYs[1] = y + insets.top() * scaleY;
+        sliceYs[2] = y + height - insets.bottom() * scaleY;
+        sliceYs[3] = y + height;
+
+        Matrix4f transform = currentTransform();
+        for (int row = 0; row < 3; row++) {
+            if (sliceYs[row + 1] <= sliceYs[row]) continue;
+            for (int column = 0; column < 3; column++) {
+                if (sliceXs[column + 1] <= sliceXs[column]) continue;
+                addQuad(transform, sliceXs[column], sliceYs[row], sliceXs[column + 1], sliceYs[row + 1],
+                        uvs[column], uvs[4 + row], uvs[column + 1], uvs[4 + row + 1], WHITE, textureId);
+            }
+        }
+    }
+
+    private float[] findNineSliceUvs(int textureId, NineSliceInsets insets) {
+        for (NineSliceUvs entry = nineSliceUvs.get(insets); entry != null; entry = entry.next()) {
+            if (entry.textureId() == textureId) return entry.uvs();
+        }
+        return null;
+    }
+
+    private static float[] computeNineSliceUvs(int textureWidth, int textureHeight, NineSliceInsets insets) {
+        return new float[]{
+                0.0f, (float) insets.left() / textureWidth, 1.0f - (float) insets.right() / textureWidth, 1.0f,
+                0.0f, (float) insets.top() / textureHeight, 1.0f - (float) insets.bottom() / textureHeight, 1.0f
+        };
+    }
+
+    /**
+     * Draw the current frame of an animation. After the first call this is one table read and one quad.
+     */
+    public void drawAnimation(AnimationPlayer player, float x, float y, float width, float height, int color) {
+        if (player.textureId == 0) {
+            TextureResource textureResource = getTextureResource(player.getAnimation().sheet().texture());
+            if (textureResource == null) return;
+            player.textureId = textureResource.glTextureId();
+        }
+
+        float[] uvs = player.getAnimation().sheet().frameUvs();
+        int offset = player.getFrameOffset();
+        addQuad(currentTransform(), x, y, x + width, y + height,
+                uvs[offset], uvs[offset + 1], uvs[offset + 2], uvs[offset + 3], color, player.textureId);
+    }
+
+    /**
+     * Draw a quad from an already resolved GL texture, tinted by a packed color.
+     * Used by the text renderer and other systems that manage their own textures.
+     */
+    public void drawTexturedQuad(int textureId, float x1, float y1, float x2, float y2,
+                                 float u1, float v1, float u2, float v2, int color) {
+        addQuad(currentTransform(), x1, y1, x2, y2, u1, v1, u2, v2, color, textureId);
+    }
+
+    /**
+     * Draw a quad under an explicit transform instead of the current matrix stack entry
+     */
+    public void drawTexturedQuad(Matrix4f transform, int textureId, float x1, float y1, float x2, float y2,
+                                 float u1, float v1, float u2, float v2, int color) {
+        addQuad(transform, x1, y1, x2, y2, u1, v1, u2, v2, color, textureId);
+    }
+
+    /**
+     * Draw many sprites sharing one texture. With instancing support each sprite costs one
+     * 32 byte record instead of four vertices; otherwise (or while recording a {@link RenderList})
+     * the sprites are expanded into regular quads.
+     * <p>
+     * Instanced sprites are drawn at the call position: pending quads are flushed first, so
+     * they do not take part in layer sorting.
+     */
+    public void drawInstances(int textureId, SpriteInstances instances) {
+        if (instances.size() == 0) return;
+
+        if (instancedRenderer == null || recordingList != null) {
+            expandInstances(textureId, instances);
+            return;
+        }
+
+        flush(FlushReason.INSTANCES);
+
+        applyClipScissor();
+        GlStateManager.prepareBatchRender();
+        currentBlend.apply();
+        GlStateManager.applyMatrix(matrices.peek());
+        beginGpuPass(GpuTimer.Pass.INSTANCES);
+        stats.instances(instances.size(), instancedRenderer.draw(textureId, instances, vertexBuffer, indexBuffer));
+        endGpuPass();
+        GlStateManager.applyMatrix(IDENTITY, MatrixStack.IDENTITY_STAMP);
+    }
+
+    /**
+     * Draw many sprites from a registered texture
+     */
+    public void drawInstances(ResourceLocation texture, SpriteInstances instances) {
+        TextureResource textureResource = getTextureResource(texture);
+        if (textureResource == null) return;
+
+        drawInstances(textureResource.glTextureId(), instances);
+    }
+
+    /**
+     * CPU fallback for {@link #drawInstances}: one batched quad per sprite
+     */
+    private void expandInstances(int textureId, SpriteInstances instances) {
+        Matrix4f transform = currentTransform();
+        for (int i = 0; i < instances.size(); i++) {
+            float halfWidth = instances.width(i) * 0.5f;
+            float halfHeight = instances.height(i) * 0.5f;
+            instanceTransform.set(transform)
+                    .translate(instances.centerX(i), instances.centerY(i), 0.0f)
+                    .rotateZ(instances.rotation(i));
+            addQuad(instanceTransform, -halfWidth, -halfHeight, halfWidth, halfHeight,
+                    instances.uv(i, 0), instances.uv(i, 1), instances.uv(i, 2), instances.uv(i, 3),
+                    instances.color(i), textureId);
+        }
     }
 
     /**
      * Draw a colored rectangle
      */
     public void drawRect(float x, float y, float width, float height, float r, float g, float b, float a) {
-        addColoredQuad(x, y, x + width, y + height, r, g, b, a);
+        fillRect(x, y, width, height, packColor(r, g, b, a));
     }
 
     /**
@@ -122,124 +490,979 @@ public class RenderSystem {
      */
     public void drawRectOutline(float x, float y, float width, float height, float lineWidth,
                                 float r, float g, float b, float a) {
+        int color = packColor(r, g, b, a);
         // Top
-        drawRect(x, y, width, lineWidth, r, g, b, a);
+        fillRect(x, y, width, lineWidth, color);
         // Bottom
-        drawRect(x, y + height - lineWidth, width, lineWidth, r, g, b, a);
+        fillRect(x, y + height - lineWidth, width, lineWidth, color);
         // Left
-        drawRect(x, y + lineWidth, lineWidth, height - 2 * lineWidth, r, g, b, a);
+        fillRect(x, y + lineWidth, lineWidth, height - 2 * lineWidth, color);
         // Right
-        drawRect(x + width - lineWidth, y + lineWidth, lineWidth, height - 2 * lineWidth, r, g, b, a);
+        fillRect(x + width - lineWidth, y + lineWidth, lineWidth, height - 2 * lineWidth, color);
     }
 
     /**
      * Convenience methods for common colors
      */
     public void drawRect(float x, float y, float width, float height, int color) {
-        float a = ((color >> 24) & 0xFF) / 255.0f;
-        float r = ((color >> 16) & 0xFF) / 255.0f;
-        float g = ((color >> 8) & 0xFF) / 255.0f;
-        float b = (color & 0xFF) / 255.0f;
-        drawRect(x, y, width, height, r, g, b, a);
+        fillRect(x, y, width, height, argbToPacked(color));
     }
 
     public void drawWhiteRect(float x, float y, float width, float height) {
-        drawRect(x, y, width, height, 1.0f, 1.0f, 1.0f, 1.0f);
+        fillRect(x, y, width, height, WHITE);
     }
 
     public void drawBlackRect(float x, float y, float width, float height) {
-        drawRect(x, y, width, height, 0.0f, 0.0f, 0.0f, 1.0f);
+        fillRect(x, y, width, height, packColor(0.0f, 0.0f, 0.0f, 1.0f));
+    }
+
+    // =================== SHAPES ===================
+
+    /**
+     * Fill a rectangle with one packed color per corner (top-left, top-right, bottom-right, bottom-left)
+     */
+    public void fillGradientRect(float x, float y, float width, float height,
+                                 int topLeft, int topRight, int bottomRight, int bottomLeft) {
+        drawShape(RECT_OUTLINE, false, x, y, width, height, topLeft, topRight, bottomRight, bottomLeft);
+    }
+
+    /**
+     * Fill a rectangle with rounded corners. The radius is limited to half the shorter side.
+     */
+    public void fillRoundedRect(float x, float y, float width, float height, float radius,
+                                int topLeft, int topRight, int bottomRight, int bottomLeft) {
+        radius = Math.min(radius, Math.min(width, height) * 0.5f);
+        float[] outline = radius > 0.0f ? shapeCache.roundedRect(radius) : RECT_OUTLINE;
+        drawShape(outline, radius > 0.0f, x, y, width, height, topLeft, topRight, bottomRight, bottomLeft);
+    }
+
+    /**
+     * Fill an ellipse inscribed in (x, y, width, height); corner colors blend across its bounds
+     */
+    public void fillEllipse(float x, float y, float width, float height,
+                            int topLeft, int topRight, int bottomRight, int bottomLeft) {
+        int segments = ShapeCache.circleSegments(Math.max(width, height) * 0.5f * transformScale());
+        drawShape(shapeCache.ellipse(segments), true, x, y, width, height, topLeft, topRight, bottomRight, bottomLeft);
+    }
+
+    /**
+     * Draw a line segment of the given width with square ends
+     */
+    public void drawLine(float x1, float y1, float x2, float y2, float lineWidth, int color) {
+        float dx = x2 - x1, dy = y2 - y1;
+        float length = (float) Math.sqrt(dx * dx + dy * dy);
+        if (length == 0.0f || lineWidth <= 0.0f) return;
+
+        float nx = -dy / length * lineWidth * 0.5f;
+        float ny = dx / length * lineWidth * 0.5f;
+        linePoints[0] = x1 + nx; linePoints[1] = y1 + ny;
+        linePoints[2] = x2 + nx; linePoints[3] = y2 + ny;
+        linePoints[4] = x2 - nx; linePoints[5] = y2 - ny;
+        linePoints[6] = x1 - nx; linePoints[7] = y1 - ny;
+        fillPolygon(linePoints, 4, color);
+    }
+
+    /**
+     * Fill a convex polygon given as {@code pointCount} x, y pairs
+     */
+    public void fillPolygon(float[] points, int pointCount, int color) {
+        if (pointCount < 3) return;
+        ensureShapeCapacity(pointCount);
+
+        Matrix4f transform = currentTransform();
+        float m00 = transform.m00(), m01 = transform.m01();
+        float m10 = transform.m10(), m11 = transform.m11();
+        float tx = transform.m30(), ty = transform.m31();
+        for (int i = 0; i < pointCount; i++) {
+            float px = points[i * 2], py = points[i * 2 + 1];
+            shapeXs[i] = m00 * px + m10 * py + tx;
+            shapeYs[i] = m01 * px + m11 * py + ty;
+            shapeColors[i] = color;
+        }
+        emitFan(0, 1, pointCount - 2, pointCount);
+    }
+
+    /**
+     * Place a cached outline over (x, y, width, height), transform it once and emit it as a fan
+     *
+     * @param centerFan fan out from the shape's center instead of its first point (smoother gradients)
+     */
+    private void drawShape(float[] outline, boolean centerFan, float x, float y, float width, float height,
+                           int topLeft, int topRight, int bottomRight, int bottomLeft) {
+        if (width <= 0.0f || height <= 0.0f) return;
+
+        int points = outline.length / 4;
+        ensureShapeCapacity(points + 1);
+        boolean uniform = topLeft == topRight && topLeft == bottomRight && topLeft == bottomLeft;
+        float inverseWidth = 1.0f / width, inverseHeight = 1.0f / height;
+
+        Matrix4f transform = currentTransform();
+        float m00 = transform.m00(), m01 = transform.m01();
+        float m10 = transform.m10(), m11 = transform.m11();
+        float tx = transform.m30(), ty = transform.m31();
+
+        for (int i = 0; i < points; i++) {
+            float ax = outline[i * 4], ay = outline[i * 4 + 1];
+            float px = x + ax * width + outline[i * 4 + 2];
+            float py = y + ay * height + outline[i * 4 + 3];
+            shapeXs[i] = m00 * px + m10 * py + tx;
+            shapeYs[i] = m01 * px + m11 * py + ty;
+            shapeColors[i] = uniform ? topLeft : bilinearColor(topLeft, topRight, bottomRight, bottomLeft,
+                    ax + outline[i * 4 + 2] * inverseWidth, ay + outline[i * 4 + 3] * inverseHeight);
+        }
+
+        if (centerFan) {
+            float cx = x + width * 0.5f, cy = y + height * 0.5f;
+            shapeXs[points] = m00 * cx + m10 * cy + tx;
+            shapeYs[points] = m01 * cx + m11 * cy + ty;
+            shapeColors[points] = uniform ? topLeft : bilinearColor(topLeft, topRight, bottomRight, bottomLeft, 0.5f, 0.5f);
+            emitFan(points, 0, points, points);
+        } else {
+            emitFan(0, 1, points - 2, points);
+        }
+    }
+
+    /**
+     * Emit the triangles (hub, rim j, rim j + 1) for j = 0 .. triangles - 1 from the shape scratch arrays,
+     * two per quad. Rim indices wrap around {@code points}. An odd last triangle becomes a quad with a
+     * repeated corner.
+     */
+    private void emitFan(int hub, int rimStart, int triangles, int points) {
+        int quads = (triangles + 1) / 2;
+        submittedQuads += quads;
+
+        float minX = shapeXs[0], maxX = minX, minY = shapeYs[0], maxY = minY;
+        int used = Math.max(points, hub + 1);
+        for (int i = 1; i < used; i++) {
+            minX = Math.min(minX, shapeXs[i]);
+            maxX = Math.max(maxX, shapeXs[i]);
+            minY = Math.min(minY, shapeYs[i]);
+            maxY = Math.max(maxY, shapeYs[i]);
+        }
+        if (cullingEnabled && recordingList == null
+                && (maxX <= cullMinX || minX >= cullMaxX || maxY <= cullMinY || minY >= cullMaxY)) {
+            culledQuads += quads;
+            return;
+        }
+
+        // Arbitrary triangles cannot be cut on the CPU; scissor unless the shape lies fully inside the clip
+        boolean needsScissor = false;
+        if (clipDepth > 0 && recordingList == null) {
+            int clip = (clipDepth - 1) * 4;
+            needsScissor = minX < clipStack[clip] || minY < clipStack[clip + 1]
+                    || maxX > clipStack[clip + 2] || maxY > clipStack[clip + 3];
+        }
+        prepareScissorBatch(needsScissor);
+
+        batch.ensureCapacity(batch.quadCount + quads);
+        for (int triangle = 0; triangle < triangles; triangle += 2) {
+            int b = (rimStart + triangle) % points;
+            int c = (rimStart + triangle + 1) % points;
+            int d = triangle + 1 < triangles ? (rimStart + triangle + 2) % points : c;
+
+            int vertex = batch.addQuad(currentLayer, currentBlend, whiteTextureId) * 4;
+            batch.putVertex(vertex, shapeXs[hub], shapeYs[hub], 0.5f, 0.5f, shapeColors[hub]);
+            batch.putVertex(vertex + 1, shapeXs[b], shapeYs[b], 0.5f, 0.5f, shapeColors[b]);
+            batch.putVertex(vertex + 2, shapeXs[c], shapeYs[c], 0.5f, 0.5f, shapeColors[c]);
+            batch.putVertex(vertex + 3, shapeXs[d], shapeYs[d], 0.5f, 0.5f, shapeColors[d]);
+        }
+    }
+
+    private void ensureShapeCapacity(int points) {
+        if (points <= shapeXs.length) return;
+        int capacity = Math.max(points, shapeXs.length * 2);
+        shapeXs = new float[capacity];
+        shapeYs = new float[capacity];
+        shapeColors = new int[capacity];
+    }
+
+    /**
+     * Largest axis scale of the current transform, to pick circle detail by on-screen size
+     */
+    private float transformScale() {
+        Matrix4f transform = currentTransform();
+        float sx = transform.m00() * transform.m00() + transform.m01() * transform.m01();
+        float sy = transform.m10() * transform.m10() + transform.m11() * transform.m11();
+        return (float) Math.sqrt(Math.max(sx, sy));
+    }
+
+    /**
+     * Blend four packed corner colors at (s, t) in [0, 1]. Works per byte, so it is independent of channel order.
+     */
+    private static int bilinearColor(int topLeft, int topRight, int bottomRight, int bottomLeft, float s, float t) {
+        s = clamp(s, 0.0f, 1.0f);
+        t = clamp(t, 0.0f, 1.0f);
+        int result = 0;
+        for (int shift = 0; shift < 32; shift += 8) {
+            float top = ((topLeft >>> shift) & 0xFF) + (((topRight >>> shift) & 0xFF) - ((topLeft >>> shift) & 0xFF)) * s;
+            float bottom = ((bottomLeft >>> shift) & 0xFF) + (((bottomRight >>> shift) & 0xFF) - ((bottomLeft >>> shift) & 0xFF)) * s;
+            result |= ((int) (top + (bottom - top) * t + 0.5f) & 0xFF) << shift;
+        }
+        return result;
+    }
+
+    /**
+     * Fill a rectangle with a packed color using the white texel
+     */
+    private void fillRect(float x, float y, float width, float height, int color) {
+        addQuad(currentTransform(), x, y, x + width, y + height, 0.5f, 0.5f, 0.5f, 0.5f, color, whiteTextureId);
+    }
+
+    private Matrix4f currentTransform() {
+        return matrices.peek().getPositionMatrix();
+    }
+
+    /**
+     * Set the layer following draw calls go to. Resets to {@link RenderLayer#UI} every frame.
+     */
+    public void setLayer(RenderLayer layer) {
+        currentLayer = layer;
+    }
+
+    public RenderLayer getLayer() {
+        return currentLayer;
+    }
+
+    /**
+     * Set the blend mode following draw calls use. Resets to {@link BlendMode#ALPHA} every frame.
+     */
+    public void setBlendMode(BlendMode blendMode) {
+        currentBlend = blendMode;
+    }
+
+    public BlendMode getBlendMode() {
+        return currentBlend;
+    }
+
+    /**
+     * Add a quad to the batch, transforming its corners on the CPU
+     */
+    private void addQuad(Matrix4f transform, float x1, float y1, float x2, float y2,
+                         float u1, float v1, float u2, float v2, int color, int textureId) {
+        submittedQuads++;
+
+        // 2D affine part of the matrix (z is always 0 for our quads)
+        float m00 = transform.m00(), m01 = transform.m01();
+        float m10 = transform.m10(), m11 = transform.m11();
+        float tx = transform.m30(), ty = transform.m31();
+
+        float tlX = m00 * x1 + m10 * y1 + tx, tlY = m01 * x1 + m11 * y1 + ty;
+        float trX = m00 * x2 + m10 * y1 + tx, trY = m01 * x2 + m11 * y1 + ty;
+        float brX = m00 * x2 + m10 * y2 + tx, brY = m01 * x2 + m11 * y2 + ty;
+        float blX = m00 * x1 + m10 * y2 + tx, blY = m01 * x1 + m11 * y2 + ty;
+
+        // Recorded lists may be replayed anywhere, so only cull what is drawn directly
+        if (cullingEnabled && recordingList == null) {
+            float minX = Math.min(Math.min(tlX, trX), Math.min(brX, blX));
+            float maxX = Math.max(Math.max(tlX, trX), Math.max(brX, blX));
+            float minY = Math.min(Math.min(tlY, trY), Math.min(brY, blY));
+            float maxY = Math.max(Math.max(tlY, trY), Math.max(brY, blY));
+            if (maxX <= cullMinX || minX >= cullMaxX || maxY <= cullMinY || minY >= cullMaxY) {
+                culledQuads++;
+                return;
+            }
+        }
+
+        // Like culling, clipping applies where a list is replayed, not where it is recorded
+        boolean needsScissor = false;
+        if (clipDepth > 0 && recordingList == null) {
+            if (m01 == 0.0f && m10 == 0.0f) {
+                // Axis-aligned: cut the quad to the clip rect and move its UVs along
+                int clip = (clipDepth - 1) * 4;
+                float sx1 = tlX, sx2 = trX, sy1 = tlY, sy2 = blY;
+                float cx1 = clamp(sx1, clipStack[clip], clipStack[clip + 2]);
+                float cx2 = clamp(sx2, clipStack[clip], clipStack[clip + 2]);
+                float cy1 = clamp(sy1, clipStack[clip + 1], clipStack[clip + 3]);
+                float cy2 = clamp(sy2, clipStack[clip + 1], clipStack[clip + 3]);
+                if (cx1 == cx2 || cy1 == cy2) {
+                    culledQuads++;
+                    return;
+                }
+
+                float du = (u2 - u1) / (sx2 - sx1), dv = (v2 - v1) / (sy2 - sy1);
+                float cu1 = u1 + (cx1 - sx1) * du, cu2 = u1 + (cx2 - sx1) * du;
+                float cv1 = v1 + (cy1 - sy1) * dv, cv2 = v1 + (cy2 - sy1) * dv;
+
+                tlX = blX = cx1;
+                trX = brX = cx2;
+                tlY = trY = cy1;
+                blY = brY = cy2;
+                u1 = cu1; u2 = cu2;
+                v1 = cv1; v2 = cv2;
+            } else {
+                // Rotated quads cannot be cut into a quad; the GPU scissors them instead
+                needsScissor = true;
+            }
+        }
+        prepareScissorBatch(needsScissor);
+
+        int vertex = batch.addQuad(currentLayer, currentBlend, textureId) * 4;
+        batch.putVertex(vertex, tlX, tlY, u1, v1, color);     // Top-left
+        batch.putVertex(vertex + 1, trX, trY, u2, v1, color); // Top-right
+        batch.putVertex(vertex + 2, brX, brY, u2, v2, color); // Bottom-right
+        batch.putVertex(vertex + 3, blX, blY, u1, v2, color); // Bottom-left
+    }
+
+    private static float clamp(float value, float min, float max) {
+        return value < min ? min : Math.min(value, max);
+    }
+
+    // =================== COMMAND BUFFERS ===================
+
+    /**
+     * Merge a command buffer into the batch under the current transform, clip and layer state.
+     * Buffers are merged in call order, so submitting them in a fixed order gives a deterministic frame.
+     */
+    public void submit(CommandBuffer buffer) {
+        if (buffer.quadCount == 0) return;
+
+        Matrix4f transform = currentTransform();
+        boolean identity = (transform.properties() & Matrix4f.PROPERTY_IDENTITY) != 0;
+        float m00 = transform.m00(), m01 = transform.m01();
+        float m10 = transform.m10(), m11 = transform.m11();
+        float tx = transform.m30(), ty = transform.m31();
+
+        batch.ensureCapacity(batch.quadCount + buffer.quadCount);
+        submittedQuads += buffer.quadCount;
+
+        float[] source = buffer.positions;
+        float[] corners = submitCorners;
+        for (int quad = 0; quad < buffer.quadCount; quad++) {
+            int p = quad * 8;
+            float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+            for (int i = 0; i < 8; i += 2) {
+                float x = source[p + i], y = source[p + i + 1];
+                if (!identity) {
+                    float sx = m00 * x + m10 * y + tx;
+                    y = m01 * x + m11 * y + ty;
+                    x = sx;
+                }
+                corners[i] = x;
+                corners[i + 1] = y;
+                minX = Math.min(minX, x); maxX = Math.max(maxX, x);
+                minY = Math.min(minY, y); maxY = Math.max(maxY, y);
+            }
+
+            if (cullingEnabled && recordingList == null
+                    && (maxX <= cullMinX || minX >= cullMaxX || maxY <= cullMinY || minY >= cullMaxY)) {
+                culledQuads++;
+                continue;
+            }
+            // Recorded quads may be rotated, so anything crossing the clip edge is scissored rather than cut
+            boolean needsScissor = false;
+            if (clipDepth > 0 && recordingList == null) {
+                int clip = (clipDepth - 1) * 4;
+                needsScissor = minX < clipStack[clip] || minY < clipStack[clip + 1]
+                        || maxX > clipStack[clip + 2] || maxY > clipStack[clip + 3];
+            }
+            prepareScissorBatch(needsScissor);
+
+            int textureId = buffer.textures[quad] == CommandBuffer.WHITE_TEXTURE ? whiteTextureId : buffer.textures[quad];
+            int state = buffer.states[quad];
+            int vertex = batch.addQuad(LAYERS[state >>> 2], BLEND_MODES[state & 0b11], textureId) * 4;
+            System.arraycopy(corners, 0, batch.positions, vertex * 2, 8);
+            System.arraycopy(buffer.texCoords, p, batch.texCoords, vertex * 2, 8);
+            System.arraycopy(buffer.colors, quad * 4, batch.colors, vertex, 4);
+        }
+    }
+
+    // =================== CLIPPING ===================
+
+    /**
+     * Push a clip rectangle, given in the current transform's coordinates and intersected
+     * with the enclosing clip. A rotated transform clips to the rectangle's screen-space bounds.
+     */
+    public void pushClip(float x, float y, float width, float height) {
+        Matrix4f transform = currentTransform();
+        float m00 = transform.m00(), m01 = transform.m01();
+        float m10 = transform.m10(), m11 = transform.m11();
+        float tx = transform.m30(), ty = transform.m31();
+        float x2 = x + width, y2 = y + height;
+
+        float ax = m00 * x + m10 * y + tx, ay = m01 * x + m11 * y + ty;
+        float bx = m00 * x2 + m10 * y + tx, by = m01 * x2 + m11 * y + ty;
+        float cx = m00 * x2 + m10 * y2 + tx, cy = m01 * x2 + m11 * y2 + ty;
+        float dx = m00 * x + m10 * y2 + tx, dy = m01 * x + m11 * y2 + ty;
+
+        float minX = Math.min(Math.min(ax, bx), Math.min(cx, dx));
+        float minY = Math.min(Math.min(ay, by), Math.min(cy, dy));
+        float maxX = Math.max(Math.max(ax, bx), Math.max(cx, dx));
+        float maxY = Math.max(Math.max(ay, by), Math.max(cy, dy));
+
+        if (clipDepth > 0) {
+            int parent = (clipDepth - 1) * 4;
+            minX = Math.max(minX, clipStack[parent]);
+            minY = Math.max(minY, clipStack[parent + 1]);
+            maxX = Math.min(maxX, clipStack[parent + 2]);
+            maxY = Math.min(maxY, clipStack[parent + 3]);
+        }
+        // Keep empty intersections well-formed: everything inside gets culled
+        maxX = Math.max(minX, maxX);
+        maxY = Math.max(minY, maxY);
+
+        if ((clipDepth + 1) * 4 > clipStack.length) {
+            clipStack = Arrays.copyOf(clipStack, clipStack.length * 2);
+        }
+        int clip = clipDepth * 4;
+        clipStack[clip] = minX;
+        clipStack[clip + 1] = minY;
+        clipStack[clip + 2] = maxX;
+        clipStack[clip + 3] = maxY;
+        clipDepth++;
+
+        updateCullBounds();
     }
 
     /**
-     * Add a textured quad to the batch
+     * Restore the previous clip rectangle
      */
-    private void addTexturedQuad(float x1, float y1, float x2, float y2, float z,
-                                 float u1, float v1, float u2, float v2, int textureId) {
-        // If texture changes, flush current batch
-        if (currentTextureId != -1 && currentTextureId != textureId) {
-            flushTextureBatch();
+    public void popClip() {
+        if (clipDepth == 0) {
+            throw new IllegalStateException("popClip without matching pushClip");
         }
+        clipDepth--;
+        updateCullBounds();
+    }
 
-        currentTextureId = textureId;
-        textureQuads.add(new TexturedQuad(x1, y1, x2, y2, z, u1, v1, u2, v2, textureId));
+    public boolean isClipping() {
+        return clipDepth > 0;
     }
 
     /**
-     * Add a colored quad to the batch
+     * Keep every quad of the pending batch under one scissor state. Quads clipped on the CPU
+     * already lie inside their clip rect, so they can share a batch scissored to that same rect.
      */
-    private void addColoredQuad(float x1, float y1, float x2, float y2, float r, float g, float b, float a) {
-        // Flush textures first if any
-        if (!textureQuads.isEmpty()) {
-            flushTextureBatch();
+    private void prepareScissorBatch(boolean needsScissor) {
+        if (needsScissor) {
+            if (!batchScissored || !clipMatchesBatchScissor()) {
+                flush(FlushReason.CLIP);
+                System.arraycopy(clipStack, (clipDepth - 1) * 4, batchScissor, 0, 4);
+                batchScissored = true;
+            }
+        } else if (batchScissored && !(clipDepth > 0 && clipMatchesBatchScissor())) {
+            flush(FlushReason.CLIP);
         }
+    }
 
-        coloredQuads.add(new ColoredQuad(x1, y1, x2, y2, r, g, b, a));
+    private boolean clipMatchesBatchScissor() {
+        int clip = (clipDepth - 1) * 4;
+        return clipStack[clip] == batchScissor[0] && clipStack[clip + 1] == batchScissor[1]
+                && clipStack[clip + 2] == batchScissor[2] && clipStack[clip + 3] == batchScissor[3];
+    }
+
+    /**
+     * Enable the scissor test for a screen-space rect (top-left origin), or disable it
+     */
+    private static void applyScissor(boolean enabled, float[] rect, int offset) {
+        if (!enabled) {
+            GlStateManager.disableScissor();
+            return;
+        }
+        int x = (int) Math.floor(rect[offset]);
+        int y = (int) Math.floor(rect[offset + 1]);
+        int width = (int) Math.ceil(rect[offset + 2]) - x;
+        int height = (int) Math.ceil(rect[offset + 3]) - y;
+        GlStateManager.enableScissor(x, GlStateManager.getRenderHeight() - y - height, width, height);
+    }
+
+    /**
+     * Scissor draws that bypass the batch (lists, instances) to the current clip
+     */
+    private void applyClipScissor() {
+        applyScissor(clipDepth > 0, clipStack, (clipDepth - 1) * 4);
+    }
+
+    /**
+     * Find the draw call slot holding a texture, or -1
+     */
+    private int findSlot(int textureId) {
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (slotTextures[slot] == textureId) return slot;
+        }
+        return -1;
     }
 
     /**
      * Flush all batches
      */
     public void flushAllBatches() {
-        flushTextureBatch();
-        flushColoredBatch();
+        flush(FlushReason.EXPLICIT);
+    }
+
+    private void flush(FlushReason reason) {
+        if (batch.quadCount == 0) {
+            releasePendingTargets();
+            return;
+        }
+
+        stats.flush(reason);
+        int[] order = batch.sort(GlStateManager.getRenderWidth(), GlStateManager.getRenderHeight());
+        long[] keys = batch.getSortedKeys();
+        int quadCount = batch.getSortedCount();
+        int[] quadTextures = batch.textures;
+
+        if (recordingList == null) {
+            beginGpuPass(GpuTimer.Pass.BATCH);
+            applyScissor(batchScissored, batchScissor, 0);
+            GlStateManager.prepareBatchRender();
+            if (!immediateMode) {
+                batchShader.bind();
+                GlStateManager.setVertexAttribArrays(ATTRIBUTE_MASK);
+                GlStateManager.setVertexAttribDivisors(0);
+                indexBuffer.bind();
+            }
+        }
+
+        // Split the sorted quads into draw calls: new call on blend change, full slots or index limit
+        int runStart = 0;
+        int runBlend = QuadSorter.blendOrdinal(keys[0]);
+        slotCount = 0;
+        for (int i = 0; i < quadCount; i++) {
+            int quad = order[i];
+            int blend = QuadSorter.blendOrdinal(keys[i]);
+            int slot = findSlot(quadTextures[quad]);
+
+            FrameStats.Metric split = blend != runBlend ? FrameStats.Metric.SPLIT_BLEND
+                    : i - runStart == QuadIndexBuffer.MAX_QUADS ? FrameStats.Metric.SPLIT_INDEX_LIMIT
+                    : slot == -1 && slotCount == maxTextureSlots ? FrameStats.Metric.SPLIT_TEXTURE_SLOTS
+                    : null;
+            if (split != null) {
+                stats.split(split);
+                emitRun(order, runStart, i - runStart, BLEND_MODES[runBlend]);
+                runStart = i;
+                runBlend = blend;
+                slotCount = 0;
+                slot = -1;
+            }
+            if (slot == -1) {
+                slot = slotCount;
+                slotTextures[slotCount++] = quadTextures[quad];
+            }
+            batch.slots[quad] = (byte) slot;
+        }
+        emitRun(order, runStart, quadCount - runStart, BLEND_MODES[runBlend]);
+
+        if (recordingList == null && !immediateMode) {
+            GlStateManager.useProgram(0);
+            // Some drivers alias generic attributes onto gl_Color, leaving the current color undefined
+            GlStateManager.invalidateColor();
+        }
+        if (recordingList == null) endGpuPass();
+        slotCount = 0;
+
+        if (quadCount < batch.quadCount) {
+            // Overlap groups ran out: the rest goes on top as a batch of its own, under the same scissor
+            batch.removeFirst(quadCount);
+            flush(FlushReason.GROUP_OVERFLOW);
+            return;
+        }
+        batchScissored = false;
+        releasePendingTargets();
+        batch.clear();
     }
 
     /**
-     * Flush texture batch
+     * Draw (or record) {@code count} sorted quads that share one blend mode and one set of texture slots
      */
-    private void flushTextureBatch() {
-        if (textureQuads.isEmpty()) return;
+    private void emitRun(int[] order, int start, int count, BlendMode blend) {
+        if (recordingList != null) {
+            writeVertices(recordingList.appendSegment(count, slotTextures, slotCount, blend), order, start, count);
+            return;
+        }
 
-        GlStateManager.applyMatrix(matrices.peek().getPositionMatrix());
-        GlStateManager.prepareTextureRender();
-        GlStateManager.bindTexture(currentTextureId);
+        blend.apply();
+        for (int slot = 0; slot < slotCount; slot++) {
+            GlStateManager.bindTexture(slot, slotTextures[slot]);
+        }
+        stats.drawCall(count);
 
-        glBegin(GL_QUADS);
-        for (TexturedQuad quad : textureQuads) {
-            // Bottom-left
-            glTexCoord2f(quad.u1, quad.v2);
-            glVertex3f(quad.x1, quad.y2, quad.z);
+        if (immediateMode) {
+            drawImmediate(order, start, count);
+        } else {
+            writeVertices(vertexBuffer.begin(count * 4 * VERTEX_STRIDE), order, start, count);
+            setupVertexAttributes(vertexBuffer.end());
+            glDrawElements(GL_TRIANGLES, count * QuadIndexBuffer.INDICES_PER_QUAD, QuadIndexBuffer.INDEX_TYPE, 0L);
+        }
+    }
 
-            // Bottom-right
-            glTexCoord2f(quad.u2, quad.v2);
-            glVertex3f(quad.x2, quad.y2, quad.z);
+    /**
+     * Write {@code count} quads, taken from {@code order} starting at {@code start}, as interleaved vertices
+     */
+    private void writeVertices(long address, int[] order, int start, int count) {
+        float[] positions = batch.positions, texCoords = batch.texCoords;
+        int[] colors = batch.colors;
+        for (int i = start; i < start + count; i++) {
+            int quad = order[i];
+            byte slot = batch.slots[quad];
+            for (int vertex = quad * 4; vertex < quad * 4 + 4; vertex++) {
+                memPutFloat(address, positions[vertex * 2]);
+                memPutFloat(address + 4, positions[vertex * 2 + 1]);
+                memPutFloat(address + UV_OFFSET, texCoords[vertex * 2]);
+                memPutFloat(address + UV_OFFSET + 4, texCoords[vertex * 2 + 1]);
+                memPutInt(address + COLOR_OFFSET, colors[vertex]);
+                memPutByte(address + SLOT_OFFSET, slot);
+                address += VERTEX_STRIDE;
+            }
+        }
+    }
 
-            // Top-right
-            glTexCoord2f(quad.u2, quad.v1);
-            glVertex3f(quad.x2, quad.y1, quad.z);
+    // =================== OFFSCREEN LAYERS ===================
 
-            // Top-left
-            glTexCoord2f(quad.u1, quad.v1);
-            glVertex3f(quad.x1, quad.y1, quad.z);
+    /**
+     * Redirect following draw calls into a pooled offscreen target the size of the current one.
+     * Layers nest; each {@code beginLayer} needs a matching {@link #endLayer(float)}.
+     */
+    public void beginLayer() {
+        if (recordingList != null) {
+            throw new IllegalStateException("Offscreen layers cannot be recorded into a RenderList");
+        }
+        flush(FlushReason.LAYER);
+
+        if (targetPool == null) {
+            if (!warnedNoLayers) {
+                LOGGER.warn("Framebuffers not supported, layers are drawn directly without opacity");
+                warnedNoLayers = true;
+            }
+            layerStack.add(null);
+            return;
         }
-        glEnd();
 
-        textureQuads.clear();
-        currentTextureId = -1;
+        RenderTarget target = targetPool.acquire(GlStateManager.getRenderWidth(), GlStateManager.getRenderHeight());
+        layerStack.add(target);
+        GlStateManager.setRenderTarget(target.getFramebufferId(), target.getWidth(), target.getHeight());
+        target.clear();
+        updateCullBounds();
     }
 
     /**
-     * Flush colored batch
+     * Finish the innermost layer and composite it into the previous target as one quad
      */
-    private void flushColoredBatch() {
-        if (coloredQuads.isEmpty()) return;
+    public void endLayer(float opacity) {
+        if (layerStack.isEmpty()) {
+            throw new IllegalStateException("endLayer without matching beginLayer");
+        }
+        flush(FlushReason.LAYER);
 
-        GlStateManager.applyMatrix(matrices.peek().getPositionMatrix());
-        GlStateManager.prepareColoredRender();
+        RenderTarget target = layerStack.remove(layerStack.size() - 1);
+        if (target == null) return;
 
-        glBegin(GL_QUADS);
-        for (ColoredQuad quad : coloredQuads) {
-            GlStateManager.setColor(quad.r, quad.g, quad.b, quad.a);
+        bindCurrentLayer();
+        updateCullBounds();
+
+        if (opacity > 0.0f) {
+            // Layer content is premultiplied, so opacity scales every channel
+            float alpha = Math.min(opacity, 1.0f);
+            BlendMode previousBlend = currentBlend;
+            currentBlend = BlendMode.PREMULTIPLIED;
+            addQuad(IDENTITY, 0, 0, target.getWidth(), target.getHeight(), 0, 1, 1, 0,
+                    packColor(alpha, alpha, alpha, alpha), target.getTextureId());
+            currentBlend = previousBlend;
+        }
+
+        // The composite quad still has to be drawn; the target goes back once that batch is flushed
+        pendingReleases.add(target);
+    }
+
+    /**
+     * Bind the innermost open layer, or the window
+     */
+    private void bindCurrentLayer() {
+        for (int i = layerStack.size() - 1; i >= 0; i--) {
+            RenderTarget target = layerStack.get(i);
+            if (target != null) {
+                GlStateManager.setRenderTarget(target.getFramebufferId(), target.getWidth(), target.getHeight());
+                return;
+            }
+        }
+        GlStateManager.setRenderTarget(0, 0, 0);
+    }
 
-            glVertex2f(quad.x1, quad.y1); // Top-left
-            glVertex2f(quad.x2, quad.y1); // Top-right
-            glVertex2f(quad.x2, quad.y2); // Bottom-right
-            glVertex2f(quad.x1, quad.y2); // Bottom-left
+    private void releasePendingTargets() {
+        if (pendingReleases.isEmpty()) return;
+        for (RenderTarget target : pendingReleases) {
+            targetPool.release(target);
+        }
+        pendingReleases.clear();
+    }
+
+    // =================== CACHED PANELS ===================
+
+    /**
+     * Draw a cached panel with its top-left corner at (x, y). The panel is painted into its
+     * texture first when it is dirty or was evicted; otherwise this is a single textured quad.
+     *
+     * @param context handed to the panel's painter, which draws in panel-local coordinates
+     */
+    public void drawCachedPanel(CachedPanel panel, float x, float y, DrawContext context) {
+        if (panelCache == null) {
+            // No framebuffers: paint in place every time
+            matrices.push();
+            matrices.translate(x, y, 0);
+            panel.paint(context);
+            matrices.pop();
+            return;
+        }
+
+        RenderTarget target = panelCache.get(panel);
+        if (target == null || panel.isDirty()) {
+            if (target == null) {
+                target = panelCache.allocate(panel, CanvalConfig.getPanelCacheBudget());
+            }
+            paintPanel(panel, target, context);
+        }
+
+        BlendMode previousBlend = currentBlend;
+        currentBlend = BlendMode.PREMULTIPLIED;
+        addQuad(currentTransform(), x, y, x + target.getWidth(), y + target.getHeight(), 0, 1, 1, 0,
+                WHITE, target.getTextureId());
+        currentBlend = previousBlend;
+    }
+
+    /**
+     * Render the panel into its texture, isolated from the caller's matrix, clip, layer and recording state
+     */
+    private void paintPanel(CachedPanel panel, RenderTarget target, DrawContext context) {
+        flush(FlushReason.CACHED_PANEL);
+
+        RenderList previousRecording = recordingList;
+        recordingList = null;
+        float[] previousClips = clipStack;
+        int previousClipDepth = clipDepth;
+        if (panelDepth == panelClipStacks.size()) panelClipStacks.add(new float[4 * 8]);
+        clipStack = panelClipStacks.get(panelDepth++);
+        clipDepth = 0;
+        RenderLayer previousLayer = currentLayer;
+        BlendMode previousBlend = currentBlend;
+        currentLayer = RenderLayer.UI;
+        currentBlend = BlendMode.ALPHA;
+
+        layerStack.add(target);
+        GlStateManager.setRenderTarget(target.getFramebufferId(), target.getWidth(), target.getHeight());
+        target.clear();
+        updateCullBounds();
+        matrices.push();
+        matrices.loadIdentity();
+        try {
+            panel.paint(context);
+            flush(FlushReason.CACHED_PANEL);
+            panel.markClean();
+        } finally {
+            matrices.pop();
+            layerStack.remove(layerStack.size() - 1);
+            bindCurrentLayer();
+
+            // The panel may have grown its stack; keep the larger array for next time
+            panelClipStacks.set(--panelDepth, clipStack);
+            clipStack = previousClips;
+            clipDepth = previousClipDepth;
+            currentLayer = previousLayer;
+            currentBlend = previousBlend;
+            recordingList = previousRecording;
+            updateCullBounds();
+        }
+    }
+
+    /**
+     * Drop a panel's cached texture now instead of waiting for eviction
+     */
+    public void releaseCachedPanel(CachedPanel panel) {
+        if (panelCache != null) panelCache.remove(panel);
+    }
+
+    /**
+     * Bytes of texture memory currently held by cached panels
+     */
+    public long getPanelCacheSize() {
+        return panelCache != null ? panelCache.getUsedBytes() : 0;
+    }
+
+    // =================== RETAINED LISTS ===================
+
+    /**
+     * Start capturing draw calls into {@code list}. Anything drawn before this point is flushed first.
+     */
+    public void beginRecording(RenderList list) {
+        if (recordingList != null) {
+            throw new IllegalStateException("Another RenderList is already recording");
+        }
+        flush(FlushReason.RENDER_LIST);
+        list.begin();
+        recordingList = list;
+    }
+
+    /**
+     * Stop capturing and upload the recorded vertices
+     *
+     * @return the list passed to {@link #beginRecording(RenderList)}
+     */
+    public RenderList endRecording() {
+        if (recordingList == null) {
+            throw new IllegalStateException("No RenderList is recording");
+        }
+        flush(FlushReason.RENDER_LIST);
+
+        RenderList list = recordingList;
+        recordingList = null;
+        list.end(!immediateMode);
+        return list;
+    }
+
+    public boolean isRecording() {
+        return recordingList != null;
+    }
+
+    /**
+     * Replay a recorded list under the current matrix stack entry combined with {@code transform}.
+     * The list is drawn with one call per segment and none of its vertices are touched on the CPU.
+     */
+    public void drawList(RenderList list, Matrix4f transform) {
+        if (!list.isValid()) {
+            LOGGER.warn("Skipping RenderList that has not been recorded");
+            return;
+        }
+        if (list.getQuadCount() == 0) return;
+        if (recordingList != null) {
+            throw new IllegalStateException("Cannot replay a RenderList while recording");
+        }
+
+        flush(FlushReason.RENDER_LIST);
+
+        applyClipScissor();
+        GlStateManager.prepareBatchRender();
+        GlStateManager.applyMatrix(listTransform.set(currentTransform()).mul(transform), MatrixStack.nextStamp());
+
+        beginGpuPass(GpuTimer.Pass.RENDER_LIST);
+        if (immediateMode) {
+            replayImmediate(list);
+        } else {
+            replayBuffered(list);
+        }
+        endGpuPass();
+
+        GlStateManager.applyMatrix(IDENTITY, MatrixStack.IDENTITY_STAMP);
+    }
+
+    private void replayBuffered(RenderList list) {
+        batchShader.bind();
+        GlStateManager.setVertexAttribArrays(ATTRIBUTE_MASK);
+        GlStateManager.setVertexAttribDivisors(0);
+        GlStateManager.bindVertexBuffer(list.getBufferId());
+        indexBuffer.bind();
+
+        for (RenderList.Segment segment : list.getSegments()) {
+            segment.blend().apply();
+            int[] textures = segment.textures();
+            for (int slot = 0; slot < textures.length; slot++) {
+                GlStateManager.bindTexture(slot, textures[slot]);
+            }
+
+            setupVertexAttributes((long) segment.firstQuad() * 4 * VERTEX_STRIDE);
+            stats.drawCall(segment.quadCount());
+            glDrawElements(GL_TRIANGLES, segment.quadCount() * QuadIndexBuffer.INDICES_PER_QUAD,
+                    QuadIndexBuffer.INDEX_TYPE, 0L);
+        }
+
+        GlStateManager.useProgram(0);
+        GlStateManager.invalidateColor();
+    }
+
+    private void replayImmediate(RenderList list) {
+        ByteBuffer staging = list.getStaging();
+        long base = memAddress(staging);
+
+        for (RenderList.Segment segment : list.getSegments()) {
+            segment.blend().apply();
+            GlStateManager.bindTexture(0, segment.textures()[0]);
+            stats.drawCall(segment.quadCount());
+
+            glBegin(GL_QUADS);
+            long address = base + (long) segment.firstQuad() * 4 * VERTEX_STRIDE;
+            int vertices = segment.quadCount() * 4;
+            for (int i = 0; i < vertices; i++) {
+                int color = memGetInt(address + COLOR_OFFSET);
+                glColor4ub(red(color), green(color), blue(color), alpha(color));
+                glTexCoord2f(memGetFloat(address + UV_OFFSET), memGetFloat(address + UV_OFFSET + 4));
+                glVertex2f(memGetFloat(address), memGetFloat(address + 4));
+                address += VERTEX_STRIDE;
+            }
+            glEnd();
+        }
+
+        GlStateManager.invalidateColor();
+    }
+
+    /**
+     * Point the batch shader's attributes at vertex data starting at {@code offset} in the bound VBO
+     */
+    static void setupVertexAttributes(long offset) {
+        glVertexAttribPointer(ATTRIBUTE_POSITION, 2, GL_FLOAT, false, VERTEX_STRIDE, offset);
+        glVertexAttribPointer(ATTRIBUTE_TEX_COORD, 2, GL_FLOAT, false, VERTEX_STRIDE, offset + UV_OFFSET);
+        glVertexAttribPointer(ATTRIBUTE_COLOR, 4, GL_UNSIGNED_BYTE, true, VERTEX_STRIDE, offset + COLOR_OFFSET);
+        glVertexAttribPointer(ATTRIBUTE_TEX_SLOT, 1, GL_UNSIGNED_BYTE, false, VERTEX_STRIDE, offset + SLOT_OFFSET);
+    }
+
+    /**
+     * Legacy fallback for contexts without buffer mapping
+     */
+    private void drawImmediate(int[] order, int start, int count) {
+        float[] positions = batch.positions, texCoords = batch.texCoords;
+        int[] colors = batch.colors;
+        glBegin(GL_QUADS);
+        for (int i = start; i < start + count; i++) {
+            int quad = order[i];
+            for (int vertex = quad * 4; vertex < quad * 4 + 4; vertex++) {
+                int color = colors[vertex];
+                glColor4ub(red(color), green(color), blue(color), alpha(color));
+                glTexCoord2f(texCoords[vertex * 2], texCoords[vertex * 2 + 1]);
+                glVertex2f(positions[vertex * 2], positions[vertex * 2 + 1]);
+            }
         }
         glEnd();
 
-        coloredQuads.clear();
+        GlStateManager.invalidateColor();
+    }
+
+    // =================== COLOR PACKING ===================
+
+    /**
+     * Pack a float color into the byte order GL_UNSIGNED_BYTE expects (R, G, B, A in memory)
+     */
+    public static int packColor(float r, float g, float b, float a) {
+        return packColor((int) (r * 255.0f + 0.5f), (int) (g * 255.0f + 0.5f),
+                (int) (b * 255.0f + 0.5f), (int) (a * 255.0f + 0.5f));
+    }
+
+    /**
+     * Pack 0-255 channels into the vertex color layout
+     */
+    public static int packColor(int r, int g, int b, int a) {
+        r &= 0xFF; g &= 0xFF; b &= 0xFF; a &= 0xFF;
+        return LITTLE_ENDIAN
+                ? (a << 24) | (b << 16) | (g << 8) | r
+                : (r << 24) | (g << 16) | (b << 8) | a;
+    }
+
+    /**
+     * Convert an ARGB color (0xAARRGGBB) to the vertex color layout
+     */
+    public static int argbToPacked(int argb) {
+        return packColor((argb >> 16) & 0xFF, (argb >> 8) & 0xFF, argb & 0xFF, (argb >>> 24));
+    }
+
+    private static byte red(int packed) {
+        return (byte) (LITTLE_ENDIAN ? packed : packed >>> 24);
+    }
+
+    private static byte green(int packed) {
+        return (byte) (LITTLE_ENDIAN ? packed >>> 8 : packed >>> 16);
+    }
+
+    private static byte blue(int packed) {
+        return (byte) (LITTLE_ENDIAN ? packed >>> 16 : packed >>> 8);
+    }
+
+    private static byte alpha(int packed) {
+        return (byte) (LITTLE_ENDIAN ? packed >>> 24 : packed);
     }
 
     /**
@@ -263,8 +1486,7 @@ public class RenderSystem {
      * Force flush - useful for ensuring draw order
      */
     public void flush() {
-        flushAllBatches();
-        GlStateManager.markMatrixDirty();
+        flush(FlushReason.EXPLICIT);
     }
 
     /**
@@ -276,12 +1498,10 @@ public class RenderSystem {
 
     public void popMatrix() {
         matrices.pop();
-        GlStateManager.markMatrixDirty();
     }
 
     public void translate(float x, float y, float z) {
         matrices.translate(x, y, z);
-        GlStateManager.markMatrixDirty();
     }
 
     public void translate(float x, float y) {
@@ -290,7 +1510,6 @@ public class RenderSystem {
 
     public void scale(float x, float y, float z) {
         matrices.scale(x, y, z);
-        GlStateManager.markMatrixDirty();
     }
 
     public void scale(float factor) {
@@ -299,7 +1518,104 @@ public class RenderSystem {
 
     public void rotateZ(float angle) {
         matrices.rotateZ(angle);
-        GlStateManager.markMatrixDirty();
+    }
+
+    /**
+     * Enable or disable dropping quads that fall entirely outside the viewport
+     */
+    public void setCullingEnabled(boolean enabled) {
+        cullingEnabled = enabled;
+    }
+
+    public boolean isCullingEnabled() {
+        return cullingEnabled;
+    }
+
+    /**
+     * Quads submitted during the last completed frame, including culled ones
+     */
+    public int getSubmittedQuadCount() {
+        return lastFrameSubmittedQuads;
+    }
+
+    /**
+     * Start timing GPU work for {@code pass}; no-op unless GPU timing is active. Passes nest.
+     */
+    public void beginGpuPass(GpuTimer.Pass pass) {
+        if (gpuTimer != null) gpuTimer.begin(pass);
+    }
+
+    public void endGpuPass() {
+        if (gpuTimer != null) gpuTimer.end();
+    }
+
+    /**
+     * Whether render passes are being timed on the GPU
+     */
+    public boolean isGpuTimingActive() {
+        return gpuTimer != null;
+    }
+
+    /**
+     * Counters for completed frames, with history
+     */
+    public FrameStats getFrameStats() {
+        return stats;
+    }
+
+    /**
+     * Quads dropped by culling during the last completed frame
+     */
+    public int getCulledQuadCount() {
+        return lastFrameCulledQuads;
+    }
+
+    /**
+     * Get the built-in 1x1 white texture used for untextured quads
+     */
+    public int getWhiteTextureId() {
+        return whiteTextureId;
+    }
+
+    /**
+     * Number of textures a single batch can reference before it must flush
+     */
+    public int getMaxTextureSlots() {
+        return maxTextureSlots;
+    }
+
+    /**
+     * Whether {@link #drawInstances} uses GPU instancing
+     */
+    public boolean isInstancingSupported() {
+        return instancedRenderer != null;
+    }
+
+    /**
+     * Whether batches are drawn with the legacy glBegin/glEnd path
+     */
+    public boolean isImmediateMode() {
+        return immediateMode;
+    }
+
+    /**
+     * Release GPU buffers
+     */
+    public void cleanup() {
+        if (vertexBuffer != null) vertexBuffer.cleanup();
+        if (indexBuffer != null) indexBuffer.cleanup();
+        if (batchShader != null) batchShader.cleanup();
+        if (instancedRenderer != null) instancedRenderer.cleanup();
+        if (targetPool != null) {
+            releasePendingTargets();
+            targetPool.cleanup();
+        }
+        if (panelCache != null) panelCache.cleanup();
+        FontAtlasManager.getInstance().setGrowthListener(null);
+        FontAtlasManager.getInstance().setUploadListeners(null, null);
+        if (gpuTimer != null) gpuTimer.cleanup();
+        GlStateManager.deleteTexture(whiteTextureId);
+        LOGGER.debug("RenderSystem cleaned up");
     }
 
     /**
@@ -312,4 +1628,4 @@ public class RenderSystem {
     public int getScreenHeight() {
         return GlStateManager.getViewportHeight();
     }
-}
\ No newline at end of file
+}
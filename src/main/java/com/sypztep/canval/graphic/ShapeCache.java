@@ -0,0 +1,125 @@
+package com.sypztep.canval.graphic;
+
+import java.util.Arrays;
+
+/**
+ * Tessellated outlines for the shape primitives, cached by shape parameters.
+ * <p>
+ * A template is a closed convex outline with 4 floats per point: anchor x, anchor y
+ * (fractions of the shape's width and height) and offset x, offset y (pixels). A point
+ * lands at {@code (x + ax * width + ox, y + ay * height + oy)}, so one rounded-corner
+ * template serves every rectangle size with that radius.
+ * <p>
+ * Templates are looked up by a packed long key in a small fixed table with least-recently-used
+ * eviction, so a hit never allocates. Corner radii are quantized to half pixels, which keeps an
+ * animated radius from filling the table with near-duplicates.
+ */
+final class ShapeCache {
+    private static final int MAX_TEMPLATES = 256;
+    private static final int MIN_CIRCLE_SEGMENTS = 12;
+    private static final int MAX_CIRCLE_SEGMENTS = 128;
+    private static final int MAX_CORNER_SEGMENTS = 16;
+
+    // Key layout: kind in the top bits, then the radius in half pixels, segments in the low 16 bits
+    private static final long ELLIPSE_KIND = 1L << 62;
+    private static final long ROUNDED_KIND = 2L << 62;
+    private static final int RADIUS_SHIFT = 16;
+
+    private final long[] keys = new long[MAX_TEMPLATES];
+    private final float[][] outlines = new float[MAX_TEMPLATES][];
+    private final long[] lastUsed = new long[MAX_TEMPLATES];
+    private int count = 0;
+    private long clock = 0;
+
+    /**
+     * Segments needed for a smooth circle of this radius, in steps of 4 so templates are shared
+     */
+    static int circleSegments(float radius) {
+        int segments = ((int) Math.ceil(radius * 0.5f) + 3) & ~3;
+        return Math.max(MIN_CIRCLE_SEGMENTS, Math.min(MAX_CIRCLE_SEGMENTS, segments));
+    }
+
+    /**
+     * Ellipse inscribed in the shape's bounds
+     */
+    float[] ellipse(int segments) {
+        long key = ELLIPSE_KIND | segments;
+        float[] outline = find(key);
+        if (outline != null) return outline;
+
+        outline = new float[segments * 4];
+        for (int i = 0; i < segments; i++) {
+            double angle = 2.0 * Math.PI * i / segments;
+            outline[i * 4] = 0.5f + 0.5f * (float) Math.cos(angle);
+            outline[i * 4 + 1] = 0.5f + 0.5f * (float) Math.sin(angle);
+        }
+        return store(key, outline);
+    }
+
+    /**
+     * Rectangle with quarter-circle corners, the radius rounded down to a half pixel
+     */
+    float[] roundedRect(float radius) {
+        int halfPixels = Math.max(1, (int) (radius * 2.0f));
+        float quantized = halfPixels * 0.5f;
+        int segments = Math.max(2, Math.min(MAX_CORNER_SEGMENTS, (int) Math.ceil(quantized * 0.5f)));
+        long key = ROUNDED_KIND | ((long) halfPixels << RADIUS_SHIFT) | segments;
+        float[] outline = find(key);
+        if (outline != null) return outline;
+
+        // Corners clockwise from top-left: anchor, arc center offset, start angle
+        float[][] corners = {
+                {0, 0, quantized, quantized, 180},
+                {1, 0, -quantized, quantized, 270},
+                {1, 1, -quantized, -quantized, 0},
+                {0, 1, quantized, -quantized, 90}
+        };
+        outline = new float[4 * (segments + 1) * 4];
+        int point = 0;
+        for (float[] corner : corners) {
+            for (int i = 0; i <= segments; i++) {
+                double angle = Math.toRadians(corner[4] + 90.0 * i / segments);
+                outline[point++] = corner[0];
+                outline[point++] = corner[1];
+                outline[point++] = corner[2] + quantized * (float) Math.cos(angle);
+                outline[point++] = corner[3] + quantized * (float) Math.sin(angle);
+            }
+        }
+        return store(key, outline);
+    }
+
+    private float[] find(long key) {
+        for (int i = 0; i < count; i++) {
+            if (keys[i] == key) {
+                lastUsed[i] = ++clock;
+                return outlines[i];
+            }
+        }
+        return null;
+    }
+
+    private float[] store(long key, float[] outline) {
+        int index = count;
+        if (count == MAX_TEMPLATES) {
+            index = 0;
+            for (int i = 1; i < count; i++) {
+                if (lastUsed[i] < lastUsed[index]) index = i;
+            }
+        } else {
+            count++;
+        }
+        keys[index] = key;
+        outlines[index] = outline;
+        lastUsed[index] = ++clock;
+        return outline;
+    }
+
+    int size() {
+        return count;
+    }
+
+    void clear() {
+        Arrays.fill(outlines, null);
+        count = 0;
+    }
+}
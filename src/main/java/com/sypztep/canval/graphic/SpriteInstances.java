@@ -0,0 +1,136 @@
+package com.sypztep.canval.graphic;
+
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+
+import static org.lwjgl.system.MemoryUtil.memGetFloat;
+import static org.lwjgl.system.MemoryUtil.memGetInt;
+import static org.lwjgl.system.MemoryUtil.memGetShort;
+import static org.lwjgl.system.MemoryUtil.memPutFloat;
+import static org.lwjgl.system.MemoryUtil.memPutInt;
+import static org.lwjgl.system.MemoryUtil.memPutShort;
+
+/**
+ * Reusable list of same-texture sprites for {@link DrawContext#drawInstances}.
+ * Each sprite is one packed 32 byte record that is uploaded as-is:
+ * <pre>
+ *  0  center x, center y, width, height   (4 floats)
+ * 16  u1, v1, u2, v2                      (4 normalized unsigned shorts)
+ * 24  color                               (packed RGBA, see {@link RenderSystem#packColor})
+ * 28  rotation in radians                 (float)
+ * </pre>
+ * Fill it every frame after {@link #clear()}; the memory is kept and only grows.
+ */
+public class SpriteInstances {
+    public static final int INSTANCE_STRIDE = 32;
+    static final int UV_OFFSET = 16;
+    static final int COLOR_OFFSET = 24;
+    static final int ROTATION_OFFSET = 28;
+
+    private static final float UV_SCALE = 65535.0f;
+
+    private ByteBuffer data;
+    private int count = 0;
+
+    public SpriteInstances() {
+        this(256);
+    }
+
+    public SpriteInstances(int initialCapacity) {
+        data = MemoryUtil.memAlloc(Math.max(1, initialCapacity) * INSTANCE_STRIDE);
+    }
+
+    /**
+     * Add a sprite covering the whole texture
+     */
+    public void add(float centerX, float centerY, float width, float height, int color, float rotation) {
+        add(centerX, centerY, width, height, 0.0f, 0.0f, 1.0f, 1.0f, color, rotation);
+    }
+
+    /**
+     * Add a sprite showing the UV rectangle (u1, v1)-(u2, v2) of the texture
+     */
+    public void add(float centerX, float centerY, float width, float height,
+                    float u1, float v1, float u2, float v2, int color, float rotation) {
+        if ((count + 1) * INSTANCE_STRIDE > data.capacity()) {
+            data = MemoryUtil.memRealloc(data, data.capacity() * 2);
+        }
+
+        long address = MemoryUtil.memAddress(data) + (long) count * INSTANCE_STRIDE;
+        memPutFloat(address, centerX);
+        memPutFloat(address + 4, centerY);
+        memPutFloat(address + 8, width);
+        memPutFloat(address + 12, height);
+        memPutShort(address + UV_OFFSET, toUnorm16(u1));
+        memPutShort(address + UV_OFFSET + 2, toUnorm16(v1));
+        memPutShort(address + UV_OFFSET + 4, toUnorm16(u2));
+        memPutShort(address + UV_OFFSET + 6, toUnorm16(v2));
+        memPutInt(address + COLOR_OFFSET, color);
+        memPutFloat(address + ROTATION_OFFSET, rotation);
+        count++;
+    }
+
+    private static short toUnorm16(float value) {
+        return (short) (int) (Math.max(0.0f, Math.min(1.0f, value)) * UV_SCALE + 0.5f);
+    }
+
+    /**
+     * Remove all sprites, keeping the allocated memory
+     */
+    public void clear() {
+        count = 0;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    long address() {
+        return MemoryUtil.memAddress(data);
+    }
+
+    // Accessors for the CPU fallback path
+
+    float centerX(int index) {
+        return memGetFloat(address() + (long) index * INSTANCE_STRIDE);
+    }
+
+    float centerY(int index) {
+        return memGetFloat(address() + (long) index * INSTANCE_STRIDE + 4);
+    }
+
+    float width(int index) {
+        return memGetFloat(address() + (long) index * INSTANCE_STRIDE + 8);
+    }
+
+    float height(int index) {
+        return memGetFloat(address() + (long) index * INSTANCE_STRIDE + 12);
+    }
+
+    /**
+     * UV component 0-3 (u1, v1, u2, v2)
+     */
+    float uv(int index, int component) {
+        return (memGetShort(address() + (long) index * INSTANCE_STRIDE + UV_OFFSET + component * 2) & 0xFFFF) / UV_SCALE;
+    }
+
+    int color(int index) {
+        return memGetInt(address() + (long) index * INSTANCE_STRIDE + COLOR_OFFSET);
+    }
+
+    float rotation(int index) {
+        return memGetFloat(address() + (long) index * INSTANCE_STRIDE + ROTATION_OFFSET);
+    }
+
+    /**
+     * Free the native memory. The instance list cannot be used afterwards.
+     */
+    public void cleanup() {
+        if (data != null) {
+            MemoryUtil.memFree(data);
+            data = null;
+            count = 0;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.sypztep.canval.graphic.font;
 
+import com.sypztep.canval.graphic.gl.GlStateManager;
 import com.sypztep.canval.util.resource.FontResource;
 import org.lwjgl.opengl.GL20;
 import org.lwjgl.stb.STBTTFontinfo;
@@ -10,8 +11,7 @@ import org.slf4j.LoggerFactory;
 
 import java.nio.ByteBuffer;
 import java.nio.IntBuffer;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 import static org.lwjgl.opengl.GL11.*;
 import static org.lwjgl.stb.STBTruetype.*;
@@ -21,8 +21,16 @@ public class FontAtlas {
     private static final Logger LOGGER = LoggerFactory.getLogger(FontAtlas.class);
 
     private final FontResource font;
+    private final float fontSize;
     private final float scale;
-    private final Map<Character, CharacterInfo> characterCache = new HashMap<>();
+
+    // Glyph cache paged by the high byte of the char - lookups never box or allocate
+    private final CharacterInfo[][] glyphPages = new CharacterInfo[256][];
+    private int glyphCount = 0;
+    // Glyphs rasterized by any atlas since startup (render thread only)
+    private static long glyphMissCount = 0;
+    // Bumped whenever any atlas grows, which changes the UVs of its glyphs
+    private static int generation = 0;
 
     // Single texture atlas
     private int atlasTextureId = 0;
@@ -42,6 +50,7 @@ public class FontAtlas {
 
     public FontAtlas(FontResource font, float fontSize) {
         this.font = font;
+        this.fontSize = fontSize;
         this.scale = stbtt_ScaleForPixelHeight(font.fontInfo(), fontSize);
 
         // Cache font metrics
@@ -65,8 +74,8 @@ public class FontAtlas {
 
     private void createAtlasTexture() {
         // Create atlas texture
-        atlasTextureId = glGenTextures();
-        glBindTexture(GL_TEXTURE_2D, atlasTextureId);
+        atlasTextureId = GlStateManager.genTexture();
+        GlStateManager.bindTexture(atlasTextureId);
 
         // Set texture parameters
         glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
@@ -87,7 +96,20 @@ public class FontAtlas {
     }
 
     public CharacterInfo getCharacter(char c) {
-        return characterCache.computeIfAbsent(c, this::addCharacterToAtlas);
+        CharacterInfo[] page = glyphPages[c >>> 8];
+        if (page == null) {
+            page = new CharacterInfo[256];
+            glyphPages[c >>> 8] = page;
+        }
+
+        CharacterInfo info = page[c & 0xFF];
+        if (info == null) {
+            info = addCharacterToAtlas(c);
+            page[c & 0xFF] = info;
+            glyphCount++;
+            glyphMissCount++;
+        }
+        return info;
     }
 
     private CharacterInfo addCharacterToAtlas(char c) {
@@ -180,7 +202,7 @@ public class FontAtlas {
             }
         }
         // Update texture region
-        glBindTexture(GL_TEXTURE_2D, atlasTextureId);
+        GlStateManager.bindTexture(atlasTextureId);
 
         // Create temporary buffer for the region
         ByteBuffer regionData = MemoryUtil.memAlloc(charWidth * charHeight * 4);
@@ -196,12 +218,18 @@ public class FontAtlas {
         regionData.flip();
 
         // Upload only the changed region
+        FontAtlasManager.getInstance().beginUpload();
         glTexSubImage2D(GL_TEXTURE_2D, 0, atlasX, atlasY, charWidth, charHeight, GL_RGBA, GL_UNSIGNED_BYTE, regionData);
+        FontAtlasManager.getInstance().endUpload();
 
         MemoryUtil.memFree(regionData);
     }
 
     private void expandAtlas() {
+        // Quads already queued for this frame carry UVs for the current size
+        FontAtlasManager.getInstance().beforeAtlasGrowth();
+        generation++;
+
         int newWidth = atlasWidth * 2;
         int newHeight = atlasHeight * 2;
 
@@ -224,16 +252,20 @@ public class FontAtlas {
             }
         }
 
-        glBindTexture(GL_TEXTURE_2D, atlasTextureId);
+        GlStateManager.bindTexture(atlasTextureId);
+        FontAtlasManager.getInstance().beginUpload();
         glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA, newWidth, newHeight, 0, GL_RGBA, GL_UNSIGNED_BYTE, newAtlasData);
+        FontAtlasManager.getInstance().endUpload();
 
         // Free old data and update references
         MemoryUtil.memFree(atlasData);
         atlasData = newAtlasData;
+        float uScale = (float) atlasWidth / newWidth;
+        float vScale = (float) atlasHeight / newHeight;
         atlasWidth = newWidth;
         atlasHeight = newHeight;
 
-        recalculateUVCoordinates();
+        rescaleUVCoordinates(uScale, vScale);
     }
 
     private void BufferAtlasUpdate(int newWidth, int newHeight, ByteBuffer newAtlasData) {
@@ -245,16 +277,58 @@ public class FontAtlas {
         }
     }
 
-    private void recalculateUVCoordinates() {
-        Map<Character, CharacterInfo> oldCache = new HashMap<>(characterCache);
-        characterCache.clear();
-        currentX = 0;
-        currentY = 0;
-        rowHeight = 0;
+    /**
+     * Glyphs keep their pixel positions when the atlas grows, so only their normalized UVs change
+     */
+    private void rescaleUVCoordinates(float uScale, float vScale) {
+        for (CharacterInfo[] page : glyphPages) {
+            if (page == null) continue;
+
+            for (int low = 0; low < page.length; low++) {
+                CharacterInfo info = page[low];
+                if (info == null) continue;
+                page[low] = new CharacterInfo(info.u1() * uScale, info.v1() * vScale,
+                        info.u2() * uScale, info.v2() * vScale, info.width(), info.height(),
+                        info.xOffset(), info.yOffset(), info.advance());
+            }
+        }
+    }
+
+    /**
+     * Growth stamp shared by all atlases; glyph UVs taken under another stamp may be stale
+     */
+    public static int getGeneration() {
+        return generation;
+    }
 
-        for (Character c : oldCache.keySet())
-            characterCache.put(c, addCharacterToAtlas(c));
+    /**
+     * Glyph cache misses across all atlases since startup
+     */
+    public static long getGlyphMissCount() {
+        return glyphMissCount;
+    }
+
+    /**
+     * Share of the atlas height taken by glyph rows so far (the atlas doubles when it reaches 1)
+     */
+    public float getFillRatio() {
+        return Math.min(1.0f, (float) (currentY + rowHeight) / atlasHeight);
+    }
+
+    public int getAtlasWidth() {
+        return atlasWidth;
+    }
+
+    public int getAtlasHeight() {
+        return atlasHeight;
+    }
+
+    public float getFontSize() {
+        return fontSize;
+    }
 
+    public FontResource getFont() {
+        return font;
     }
 
     public int getAtlasTextureId() {
@@ -278,10 +352,10 @@ public class FontAtlas {
     }
 
     public void cleanup() {
-        LOGGER.debug("Cleaning up FontAtlas for {} (cached {} characters)", font.displayName(), characterCache.size());
+        LOGGER.debug("Cleaning up FontAtlas for {} (cached {} characters)", font.displayName(), glyphCount);
 
         if (atlasTextureId > 0) {
-            glDeleteTextures(atlasTextureId);
+            GlStateManager.deleteTexture(atlasTextureId);
             atlasTextureId = 0;
         }
 
@@ -290,6 +364,7 @@ public class FontAtlas {
             atlasData = null;
         }
 
-        characterCache.clear();
+        Arrays.fill(glyphPages, null);
+        glyphCount = 0;
     }
 }
\ No newline at end of file
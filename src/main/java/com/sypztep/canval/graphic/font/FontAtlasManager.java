@@ -1,18 +1,26 @@
 package com.sypztep.canval.graphic.font;
 
 
+import com.sypztep.canval.util.ResourceLocation;
 import com.sypztep.canval.util.resource.FontResource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public class FontAtlasManager {
     private static final Logger LOGGER = LoggerFactory.getLogger(FontAtlasManager.class);
     private static final FontAtlasManager INSTANCE = new FontAtlasManager();
 
-    private final Map<String, FontAtlas> atlasCache = new HashMap<>();
+    // Atlases per font, one per size - a font rarely has more than a few sizes, so a scan beats a composite key
+    private final Map<ResourceLocation, List<FontAtlas>> atlasCache = new HashMap<>();
+    private int atlasCount = 0;
+    private Runnable growthListener;
+    private Runnable uploadStartListener;
+    private Runnable uploadEndListener;
 
     private FontAtlasManager() {}
 
@@ -21,16 +29,101 @@ public class FontAtlasManager {
     }
 
     public FontAtlas getAtlas(FontResource font, float fontSize) {
-        String key = font.id() + "_" + fontSize;
-        return atlasCache.computeIfAbsent(key, k -> {
-            LOGGER.debug("Creating new FontAtlas: {}", key);
-            return new FontAtlas(font, fontSize);
-        });
+        List<FontAtlas> atlases = atlasCache.get(font.id());
+        if (atlases == null) {
+            atlases = new ArrayList<>(2);
+            atlasCache.put(font.id(), atlases);
+        }
+
+        for (int i = 0; i < atlases.size(); i++) {
+            FontAtlas atlas = atlases.get(i);
+            if (atlas.getFontSize() == fontSize) {
+                return atlas;
+            }
+        }
+
+        LOGGER.debug("Creating new FontAtlas: {}_{}", font.id(), fontSize);
+        FontAtlas atlas = new FontAtlas(font, fontSize);
+        atlases.add(atlas);
+        atlasCount++;
+        return atlas;
+    }
+
+    /**
+     * Run {@code listener} right before any atlas grows, e.g. to draw quads that still use the old UVs
+     */
+    public void setGrowthListener(Runnable listener) {
+        this.growthListener = listener;
+    }
+
+    void beforeAtlasGrowth() {
+        if (growthListener != null) growthListener.run();
+    }
+
+    /**
+     * Run {@code onStart} and {@code onEnd} around every atlas texture upload (new glyphs and growth),
+     * e.g. to time the upload on the GPU
+     */
+    public void setUploadListeners(Runnable onStart, Runnable onEnd) {
+        this.uploadStartListener = onStart;
+        this.uploadEndListener = onEnd;
+    }
+
+    void beginUpload() {
+        if (uploadStartListener != null) uploadStartListener.run();
+    }
+
+    void endUpload() {
+        if (uploadEndListener != null) uploadEndListener.run();
+    }
+
+    /**
+     * Whether {@code textureId} belongs to a font atlas
+     */
+    public boolean isAtlasTexture(int textureId) {
+        for (List<FontAtlas> atlases : atlasCache.values()) {
+            for (int i = 0; i < atlases.size(); i++) {
+                if (atlases.get(i).getAtlasTextureId() == textureId) return true;
+            }
+        }
+        return false;
+    }
+
+    public int getAtlasCount() {
+        return atlasCount;
+    }
+
+    /**
+     * Fill ratio of the fullest atlas, 0 when none exist
+     */
+    public float getHighestFillRatio() {
+        float highest = 0.0f;
+        for (List<FontAtlas> atlases : atlasCache.values()) {
+            for (int i = 0; i < atlases.size(); i++) {
+                highest = Math.max(highest, atlases.get(i).getFillRatio());
+            }
+        }
+        return highest;
+    }
+
+    /**
+     * Bytes of CPU-side atlas pixel data across all atlases
+     */
+    public long getAtlasBytes() {
+        long bytes = 0;
+        for (List<FontAtlas> atlases : atlasCache.values()) {
+            for (int i = 0; i < atlases.size(); i++) {
+                FontAtlas atlas = atlases.get(i);
+                bytes += (long) atlas.getAtlasWidth() * atlas.getAtlasHeight() * 4;
+            }
+        }
+        return bytes;
     }
 
     public void cleanup() {
-        LOGGER.info("Cleaning up FontAtlasManager ({} atlases)", atlasCache.size());
-        atlasCache.values().forEach(FontAtlas::cleanup);
+        LOGGER.info("Cleaning up FontAtlasManager ({} atlases)", atlasCount);
+        atlasCache.values().forEach(atlases -> atlases.forEach(FontAtlas::cleanup));
         atlasCache.clear();
+        atlasCount = 0;
     }
 }
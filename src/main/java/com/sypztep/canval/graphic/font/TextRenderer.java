@@ -1,16 +1,16 @@
 package com.sypztep.canval.graphic.font;
 
+import com.sypztep.canval.graphic.RenderSystem;
 import com.sypztep.canval.graphic.gl.GlStateManager;
 import com.sypztep.canval.util.math.MatrixStack;
 import com.sypztep.canval.util.resource.FontResource;
+import org.joml.Matrix4f;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.HashMap;
 import java.util.Map;
 
-import static org.lwjgl.opengl.GL11.*;
-
 /**
  * High-level text renderer with automatic typewriter effects and text management.
  * No need to manage OpenGL state or font atlases manually.
@@ -18,8 +18,14 @@ import static org.lwjgl.opengl.GL11.*;
 public class TextRenderer {
     private static final Logger LOGGER = LoggerFactory.getLogger(TextRenderer.class);
 
-    private final Map<String, Float> textWidthCache = new HashMap<>();
+    // Widths per atlas, keyed by the text itself so a hit never builds a key string
+    private final Map<FontAtlas, Map<String, Float>> textWidthCache = new HashMap<>();
     private final Map<String, TypewriterState> typewriterStates = new HashMap<>();
+    private final RenderSystem renderSystem;
+
+    public TextRenderer(RenderSystem renderSystem) {
+        this.renderSystem = renderSystem;
+    }
 
     /**
      * Typewriter effect state
@@ -29,6 +35,7 @@ public class TextRenderer {
         private final float speed; // characters per second
         private float currentTime = 0;
         private int visibleChars = 0;
+        private String visibleText = "";
         private boolean completed = false;
 
         public TypewriterState(String text, float charactersPerSecond) {
@@ -36,25 +43,34 @@ public class TextRenderer {
             this.speed = charactersPerSecond;
         }
 
-        public void update(float deltaTime) {
-            if (completed) return;
+        /**
+         * Advance the effect
+         *
+         * @return true if the visible text changed
+         */
+        public boolean update(float deltaTime) {
+            if (completed) return false;
 
             currentTime += deltaTime;
             int newVisibleChars = (int)(currentTime * speed);
 
             if (newVisibleChars > fullText.length()) {
-                visibleChars = fullText.length();
                 completed = true;
-            } else {
-                visibleChars = newVisibleChars;
+                return setVisibleChars(fullText.length());
             }
+            return setVisibleChars(newVisibleChars);
+        }
+
+        // Substring only when the count changes, not every frame
+        private boolean setVisibleChars(int count) {
+            if (count == visibleChars) return false;
+            visibleChars = count;
+            visibleText = count >= fullText.length() ? fullText : fullText.substring(0, count);
+            return true;
         }
 
         public String getVisibleText() {
-            if (visibleChars >= fullText.length()) {
-                return fullText;
-            }
-            return fullText.substring(0, visibleChars);
+            return visibleText;
         }
 
         public boolean isCompleted() {
@@ -63,12 +79,12 @@ public class TextRenderer {
 
         public void setCompleted() {
             completed = true;
-            visibleChars = fullText.length();
+            setVisibleChars(fullText.length());
         }
 
         public void reset() {
             currentTime = 0;
-            visibleChars = 0;
+            setVisibleChars(0);
             completed = false;
         }
 
@@ -98,17 +114,14 @@ public class TextRenderer {
                          float r, float g, float b, float a) {
         if (text == null || text.isEmpty()) return;
 
-        GlStateManager.applyMatrix(matrices.peek().getPositionMatrix());
-        GlStateManager.prepareTextRender();
-        GlStateManager.setColor(r, g, b, a);
-
         FontAtlas atlas = FontAtlasManager.getInstance().getAtlas(font, fontSize);
-        GlStateManager.bindTexture(atlas.getAtlasTextureId());
+        int textureId = atlas.getAtlasTextureId();
+        int color = RenderSystem.packColor(r, g, b, a);
+        Matrix4f transform = matrices.peek().getPositionMatrix();
 
         float currentX = x;
         float currentY = y + atlas.getAscent();
 
-        glBegin(GL_QUADS);
         for (int i = 0; i < text.length(); i++) {
             char c = text.charAt(i);
 
@@ -126,16 +139,13 @@ public class TextRenderer {
                 float x2 = x1 + charInfo.width();
                 float y2 = y1 + charInfo.height();
 
-                // Quad vertices
-                glTexCoord2f(charInfo.u1(), charInfo.v1()); glVertex2f(x1, y1); // Top-left
-                glTexCoord2f(charInfo.u2(), charInfo.v1()); glVertex2f(x2, y1); // Top-right
-                glTexCoord2f(charInfo.u2(), charInfo.v2()); glVertex2f(x2, y2); // Bottom-right
-                glTexCoord2f(charInfo.u1(), charInfo.v2()); glVertex2f(x1, y2); // Bottom-left
+                // Glyphs go into the shared batch as tinted quads
+                renderSystem.drawTexturedQuad(transform, textureId, x1, y1, x2, y2,
+                        charInfo.u1(), charInfo.v1(), charInfo.u2(), charInfo.v2(), color);
             }
 
             currentX += charInfo.advance();
         }
-        glEnd();
     }
 
     /**
@@ -194,11 +204,25 @@ public class TextRenderer {
 
     /**
      * Update typewriter effects (call this each frame)
+     *
+     * @return true if any typewriter revealed new characters
      */
-    public void updateTypewriters(float deltaTime) {
+    public boolean updateTypewriters(float deltaTime) {
+        boolean changed = false;
         for (TypewriterState state : typewriterStates.values()) {
-            state.update(deltaTime);
+            changed |= state.update(deltaTime);
         }
+        return changed;
+    }
+
+    /**
+     * Check if any typewriter effect is still revealing text
+     */
+    public boolean hasActiveTypewriters() {
+        for (TypewriterState state : typewriterStates.values()) {
+            if (!state.isCompleted()) return true;
+        }
+        return false;
     }
 
     /**
@@ -362,21 +386,27 @@ public class TextRenderer {
     public float getTextWidth(String text, float fontSize, FontResource font) {
         if (text == null || text.isEmpty()) return 0;
 
-        String cacheKey = text + "_" + fontSize + "_" + font.id();
-        return textWidthCache.computeIfAbsent(cacheKey, k -> {
-            FontAtlas atlas = FontAtlasManager.getInstance().getAtlas(font, fontSize);
-            float width = 0;
+        FontAtlas atlas = FontAtlasManager.getInstance().getAtlas(font, fontSize);
+        Map<String, Float> atlasWidths = textWidthCache.get(atlas);
+        if (atlasWidths == null) {
+            atlasWidths = new HashMap<>();
+            textWidthCache.put(atlas, atlasWidths);
+        }
 
-            for (int i = 0; i < text.length(); i++) {
-                char c = text.charAt(i);
-                if (c == '\n') break; // Stop at newline for single line width
+        Float cached = atlasWidths.get(text);
+        if (cached != null) return cached;
 
-                CharacterInfo charInfo = atlas.getCharacter(c);
-                width += charInfo.advance();
-            }
+        float width = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\n') break; // Stop at newline for single line width
 
-            return width;
-        });
+            CharacterInfo charInfo = atlas.getCharacter(c);
+            width += charInfo.advance();
+        }
+
+        atlasWidths.put(text, width);
+        return width;
     }
 
     /**
@@ -410,6 +440,10 @@ public class TextRenderer {
      * Get cache size for debugging
      */
     public int getCacheSize() {
-        return textWidthCache.size();
+        int size = 0;
+        for (Map<String, Float> atlasWidths : textWidthCache.values()) {
+            size += atlasWidths.size();
+        }
+        return size;
     }
 }
\ No newline at end of file
@@ -1,18 +1,31 @@
 package com.sypztep.canval.graphic.gl;
 
+import com.sypztep.canval.CanvalConfig;
+import com.sypztep.canval.graphic.shader.ShaderManager;
+import com.sypztep.canval.util.math.MatrixStack;
 import org.joml.Matrix4f;
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL33;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.nio.FloatBuffer;
+import java.util.Arrays;
 
-import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL20.*;
 import static org.lwjgl.system.MemoryUtil.memAllocFloat;
 import static org.lwjgl.system.MemoryUtil.memFree;
 
 /**
  * High-level OpenGL state manager that automatically handles state changes
- * and reduces redundant OpenGL calls.
+ * and reduces redundant OpenGL calls. All state we touch is shadowed here, and GL objects
+ * are created and deleted through it so the shadow never refers to a stale name.
+ * Issued and skipped calls are counted per frame ({@link #getIssuedCallCount()}, {@link #getSkippedCallCount()}).
+ * <p>
+ * On GL 3.3+ contexts (including core profile) everything is drawn through shaders:
+ * matrices go to {@link ShaderManager} uniforms and a single vertex array object stays bound.
+ * Older contexts, or {@link CanvalConfig#isImmediateModeRendering()}, keep the fixed-function path.
  */
 public class GlStateManager {
     private static final Logger LOGGER = LoggerFactory.getLogger(GlStateManager.class);
@@ -21,19 +34,55 @@ public class GlStateManager {
     private static boolean blendEnabled = false;
     private static int blendSrcFactor = -1;
     private static int blendDstFactor = -1;
+    private static int blendSrcAlphaFactor = -1;
+    private static int blendDstAlphaFactor = -1;
     private static boolean textureEnabled = false;
-    private static int boundTexture = -1;
+    private static final int MAX_TEXTURE_UNITS = 32;
+    private static final int[] boundTextures = new int[MAX_TEXTURE_UNITS];
+    private static int activeTextureUnit = 0;
+    private static int boundProgram = 0;
+    private static int enabledAttribArrays = 0;
+    private static int instancedAttribArrays = 0;
     private static float[] currentColor = {1.0f, 1.0f, 1.0f, 1.0f};
+    private static int boundVertexBuffer = 0;
+    private static int boundIndexBuffer = 0;
+    private static boolean scissorEnabled = false;
+    private static int scissorX = -1, scissorY = -1, scissorWidth = -1, scissorHeight = -1;
+    private static int boundFramebuffer = 0;
+    private static int boundVertexArray = 0;
+    private static boolean depthTestEnabled = false;
+    private static int viewportX = -1, viewportY = -1, viewportW = -1, viewportH = -1;
+    private static final float[] clearColor = {0.0f, 0.0f, 0.0f, 0.0f};
     private static boolean projectionSet = false;
-    private static boolean matrixDirty = true;
+    private static final long UNKNOWN_STAMP = -1L;
+    private static long appliedMatrixStamp = UNKNOWN_STAMP;
+
+    // Shader pipeline (GL 3.3+) vs fixed-function fallback
+    private static boolean shaderPipeline = false;
+    private static int vertexArrayId = 0;
+
+    // Redundant-call accounting: state calls sent to GL vs. skipped because the cache already matched
+    private static int issuedCalls = 0;
+    private static int skippedCalls = 0;
+    private static int lastFrameIssuedCalls = 0;
+    private static int lastFrameSkippedCalls = 0;
+    // Running totals, diffed per frame by FrameStats
+    private static long textureBindCount = 0;
+    private static long matrixUploadCount = 0;
+
+    static {
+        Arrays.fill(boundTextures, -1);
+    }
 
     // Matrix handling
     private static final FloatBuffer matrixBuffer = memAllocFloat(16);
-    private static final Matrix4f lastAppliedMatrix = new Matrix4f();
+    private static final Matrix4f projectionMatrix = new Matrix4f();
 
-    // Viewport
+    // Viewport (window) and the size of whatever is being rendered to (window or render target)
     private static int viewportWidth = 0;
     private static int viewportHeight = 0;
+    private static int renderWidth = 0;
+    private static int renderHeight = 0;
 
     /**
      * Initialize the state manager for 2D rendering
@@ -41,67 +90,101 @@ public class GlStateManager {
     public static void init2D(int windowWidth, int windowHeight) {
         viewportWidth = windowWidth;
         viewportHeight = windowHeight;
+        renderWidth = windowWidth;
+        renderHeight = windowHeight;
+
+        shaderPipeline = !CanvalConfig.isImmediateModeRendering() && GL.getCapabilities().OpenGL33;
+        if (shaderPipeline) {
+            // Core profile needs a bound VAO for any vertex attribute; one is enough for our formats
+            vertexArrayId = genVertexArray();
+            bindVertexArray(vertexArrayId);
+        }
 
         // Set up 2D projection matrix
-        glMatrixMode(GL_PROJECTION);
-        glLoadIdentity();
-        glOrtho(0, windowWidth, windowHeight, 0, -1, 1);
-        projectionSet = true;
+        applyProjection();
 
         // Default 2D settings
         enableBlend();
         setBlendFunc(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA);
         disableDepthTest();
 
-        LOGGER.info("GlStateManager initialized for 2D rendering: {}x{}", windowWidth, windowHeight);
+        LOGGER.info("GlStateManager initialized for 2D rendering: {}x{} ({})", windowWidth, windowHeight,
+                shaderPipeline ? "shader pipeline" : "fixed function");
+    }
+
+    /**
+     * Upload the orthographic projection for the current render size
+     */
+    private static void applyProjection() {
+        if (shaderPipeline) {
+            ShaderManager.setProjection(projectionMatrix.setOrtho(0, renderWidth, renderHeight, 0, -1, 1));
+        } else {
+            glMatrixMode(GL_PROJECTION);
+            glLoadIdentity();
+            glOrtho(0, renderWidth, renderHeight, 0, -1, 1);
+            // Model-view uploads assume this mode, so they never have to switch it
+            glMatrixMode(GL_MODELVIEW);
+        }
+        projectionSet = true;
+    }
+
+    /**
+     * Whether rendering goes through shaders and buffers (GL 3.3+) instead of fixed function
+     */
+    public static boolean isShaderPipeline() {
+        return shaderPipeline;
     }
 
     /**
      * Begin a new frame - automatically sets up 2D projection if needed
      */
     public static void beginFrame() {
+        lastFrameIssuedCalls = issuedCalls;
+        lastFrameSkippedCalls = skippedCalls;
+        issuedCalls = 0;
+        skippedCalls = 0;
+
         if (!projectionSet) {
-            glMatrixMode(GL_PROJECTION);
-            glLoadIdentity();
-            glOrtho(0, viewportWidth, viewportHeight, 0, -1, 1);
-            projectionSet = true;
+            applyProjection();
         }
-        matrixDirty = true;
     }
 
     /**
      * End the current frame
      */
     public static void endFrame() {
-        matrixDirty = true; // Reset some states for next frame
     }
 
     /**
-     * Apply matrix transformation - only when needed
+     * Apply a matrix stack entry as the model-view matrix - uploaded only when its stamp changed
      */
-    public static void applyMatrix(Matrix4f matrix) {
-        glMatrixMode(GL_MODELVIEW);
-
-        if (matrixDirty || !matrix.equals(lastAppliedMatrix)) {
-            matrix.get(matrixBuffer);
-            glLoadMatrixf(matrixBuffer);
-            lastAppliedMatrix.set(matrix);
-            matrixDirty = false;
-        }
+    public static void applyMatrix(MatrixStack.Entry entry) {
+        applyMatrix(entry.getPositionMatrix(), entry.getStamp());
     }
 
     /**
-     * Mark matrix as dirty - will be reapplied next draw call
+     * Apply a model-view matrix identified by {@code stamp} (see {@link MatrixStack#nextStamp()}).
+     * Equal stamps mean equal matrices, so the upload is skipped without comparing floats.
      */
-    public static void markMatrixDirty() {
-        matrixDirty = true;
+    public static void applyMatrix(Matrix4f matrix, long stamp) {
+        if (!track(stamp != appliedMatrixStamp)) return;
+        appliedMatrixStamp = stamp;
+        matrixUploadCount++;
+
+        if (shaderPipeline) {
+            // Programs pick the new value up on their next bind
+            ShaderManager.setModelView(matrix);
+        } else {
+            matrix.get(matrixBuffer);
+            glLoadMatrixf(matrixBuffer);
+        }
     }
 
     /**
      * Enable blending with automatic state tracking
      */
     public static void enableBlend() {
-        if (!blendEnabled) {
+        if (track(!blendEnabled)) {
             glEnable(GL_BLEND);
             blendEnabled = true;
         }
@@ -111,7 +194,7 @@ public class GlStateManager {
      * Disable blending with automatic state tracking
      */
     public static void disableBlend() {
-        if (blendEnabled) {
+        if (track(blendEnabled)) {
             glDisable(GL_BLEND);
             blendEnabled = false;
         }
@@ -121,10 +204,47 @@ public class GlStateManager {
      * Set blend function - only if different from current
      */
     public static void setBlendFunc(int srcFactor, int dstFactor) {
-        if (blendSrcFactor != srcFactor || blendDstFactor != dstFactor) {
-            glBlendFunc(srcFactor, dstFactor);
+        setBlendFuncSeparate(srcFactor, dstFactor, srcFactor, dstFactor);
+    }
+
+    /**
+     * Set separate color and alpha blend functions - only if different from current
+     */
+    public static void setBlendFuncSeparate(int srcFactor, int dstFactor, int srcAlphaFactor, int dstAlphaFactor) {
+        if (track(blendSrcFactor != srcFactor || blendDstFactor != dstFactor
+                || blendSrcAlphaFactor != srcAlphaFactor || blendDstAlphaFactor != dstAlphaFactor)) {
+            glBlendFuncSeparate(srcFactor, dstFactor, srcAlphaFactor, dstAlphaFactor);
             blendSrcFactor = srcFactor;
             blendDstFactor = dstFactor;
+            blendSrcAlphaFactor = srcAlphaFactor;
+            blendDstAlphaFactor = dstAlphaFactor;
+        }
+    }
+
+    /**
+     * Enable the scissor test for a window-space rectangle (origin bottom-left) - only touching GL on change
+     */
+    public static void enableScissor(int x, int y, int width, int height) {
+        if (track(!scissorEnabled)) {
+            glEnable(GL_SCISSOR_TEST);
+            scissorEnabled = true;
+        }
+        if (track(scissorX != x || scissorY != y || scissorWidth != width || scissorHeight != height)) {
+            glScissor(x, y, width, height);
+            scissorX = x;
+            scissorY = y;
+            scissorWidth = width;
+            scissorHeight = height;
+        }
+    }
+
+    /**
+     * Disable the scissor test with automatic state tracking
+     */
+    public static void disableScissor() {
+        if (track(scissorEnabled)) {
+            glDisable(GL_SCISSOR_TEST);
+            scissorEnabled = false;
         }
     }
 
@@ -132,7 +252,8 @@ public class GlStateManager {
      * Enable 2D texturing with automatic state tracking
      */
     public static void enableTexture2D() {
-        if (!textureEnabled) {
+        // GL_TEXTURE_2D is fixed-function state; shaders sample regardless
+        if (track(!textureEnabled && !shaderPipeline)) {
             glEnable(GL_TEXTURE_2D);
             textureEnabled = true;
         }
@@ -142,28 +263,187 @@ public class GlStateManager {
      * Disable 2D texturing with automatic state tracking
      */
     public static void disableTexture2D() {
-        if (textureEnabled) {
+        if (track(textureEnabled)) {
             glDisable(GL_TEXTURE_2D);
             textureEnabled = false;
         }
     }
 
     /**
-     * Bind texture - only if different from current
+     * Bind texture to the active unit - only if different from current
      */
     public static void bindTexture(int textureId) {
-        if (boundTexture != textureId) {
+        if (track(boundTextures[activeTextureUnit] != textureId)) {
+            glBindTexture(GL_TEXTURE_2D, textureId);
+            boundTextures[activeTextureUnit] = textureId;
+            textureBindCount++;
+        }
+    }
+
+    /**
+     * Bind texture to a specific unit - only if different from what that unit holds
+     */
+    public static void bindTexture(int unit, int textureId) {
+        if (track(boundTextures[unit] != textureId)) {
+            activeTexture(unit);
             glBindTexture(GL_TEXTURE_2D, textureId);
-            boundTexture = textureId;
+            boundTextures[unit] = textureId;
+            textureBindCount++;
+        }
+    }
+
+    /**
+     * Select the active texture unit - only if different from current
+     */
+    public static void activeTexture(int unit) {
+        if (track(activeTextureUnit != unit)) {
+            glActiveTexture(GL_TEXTURE0 + unit);
+            activeTextureUnit = unit;
+        }
+    }
+
+    /**
+     * Delete a texture and drop it from every unit's binding cache
+     */
+    public static void deleteTexture(int textureId) {
+        for (int unit = 0; unit < MAX_TEXTURE_UNITS; unit++) {
+            if (boundTextures[unit] == textureId) boundTextures[unit] = -1;
+        }
+        glDeleteTextures(textureId);
+        issuedCalls++;
+    }
+
+    /**
+     * Number of texture units a fragment shader can sample from, capped to what we track
+     */
+    public static int getMaxTextureUnits() {
+        return Math.min(glGetInteger(GL_MAX_TEXTURE_IMAGE_UNITS), MAX_TEXTURE_UNITS);
+    }
+
+    /**
+     * Use shader program - only if different from current (0 = fixed function)
+     */
+    public static void useProgram(int programId) {
+        if (track(boundProgram != programId)) {
+            glUseProgram(programId);
+            boundProgram = programId;
+        }
+    }
+
+    /**
+     * Enable exactly the generic vertex attribute arrays whose bits are set in {@code mask}
+     */
+    public static void setVertexAttribArrays(int mask) {
+        int changed = enabledAttribArrays ^ mask;
+        if (!track(changed != 0)) return;
+
+        for (int index = 0; changed != 0; index++, changed >>>= 1) {
+            if ((changed & 1) == 0) continue;
+            if ((mask & (1 << index)) != 0) {
+                glEnableVertexAttribArray(index);
+            } else {
+                glDisableVertexAttribArray(index);
+            }
+        }
+        enabledAttribArrays = mask;
+    }
+
+    /**
+     * Make exactly the attributes whose bits are set in {@code mask} advance once per instance
+     * instead of once per vertex
+     */
+    public static void setVertexAttribDivisors(int mask) {
+        int changed = instancedAttribArrays ^ mask;
+        if (!track(changed != 0)) return;
+
+        for (int index = 0; changed != 0; index++, changed >>>= 1) {
+            if ((changed & 1) == 0) continue;
+            GL33.glVertexAttribDivisor(index, (mask & (1 << index)) != 0 ? 1 : 0);
+        }
+        instancedAttribArrays = mask;
+    }
+
+    /**
+     * Bind vertex buffer - only if different from current
+     */
+    public static void bindVertexBuffer(int bufferId) {
+        if (track(boundVertexBuffer != bufferId)) {
+            glBindBuffer(GL_ARRAY_BUFFER, bufferId);
+            boundVertexBuffer = bufferId;
+        }
+    }
+
+    /**
+     * Bind element (index) buffer - only if different from current
+     */
+    public static void bindIndexBuffer(int bufferId) {
+        if (track(boundIndexBuffer != bufferId)) {
+            glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, bufferId);
+            boundIndexBuffer = bufferId;
+        }
+    }
+
+    /**
+     * Bind a framebuffer (0 = window) - only if different from current
+     */
+    public static void bindFramebuffer(int framebufferId) {
+        if (track(boundFramebuffer != framebufferId)) {
+            GL30.glBindFramebuffer(GL30.GL_FRAMEBUFFER, framebufferId);
+            boundFramebuffer = framebufferId;
+        }
+    }
+
+    public static int getBoundFramebuffer() {
+        return boundFramebuffer;
+    }
+
+    /**
+     * Render into a framebuffer of the given size: binds it and sets viewport and projection to match.
+     * Pass 0 to go back to the window.
+     */
+    public static void setRenderTarget(int framebufferId, int width, int height) {
+        bindFramebuffer(framebufferId);
+        if (framebufferId == 0) {
+            width = viewportWidth;
+            height = viewportHeight;
+        }
+        if (renderWidth != width || renderHeight != height) {
+            renderWidth = width;
+            renderHeight = height;
+            setViewport(0, 0, width, height);
+            applyProjection();
+        }
+    }
+
+    /**
+     * Delete a framebuffer and drop it from the binding cache
+     */
+    public static void deleteFramebuffer(int framebufferId) {
+        if (boundFramebuffer == framebufferId) {
+            GL30.glBindFramebuffer(GL30.GL_FRAMEBUFFER, 0);
+            boundFramebuffer = 0;
         }
+        GL30.glDeleteFramebuffers(framebufferId);
+        issuedCalls++;
+    }
+
+    /**
+     * Delete a buffer object and drop it from the binding cache
+     */
+    public static void deleteBuffer(int bufferId) {
+        if (boundVertexBuffer == bufferId) boundVertexBuffer = 0;
+        if (boundIndexBuffer == bufferId) boundIndexBuffer = 0;
+        glDeleteBuffers(bufferId);
+        issuedCalls++;
     }
 
     /**
      * Set color - only if different from current
      */
     public static void setColor(float r, float g, float b, float a) {
-        if (currentColor[0] != r || currentColor[1] != g ||
-                currentColor[2] != b || currentColor[3] != a) {
+        if (shaderPipeline) return; // Colors come from vertex data
+        if (track(currentColor[0] != r || currentColor[1] != g ||
+                currentColor[2] != b || currentColor[3] != a)) {
             glColor4f(r, g, b, a);
             currentColor[0] = r;
             currentColor[1] = g;
@@ -172,6 +452,14 @@ public class GlStateManager {
         }
     }
 
+    /**
+     * Forget the cached color - needed after drawing with a color array,
+     * which leaves the current GL color undefined
+     */
+    public static void invalidateColor() {
+        currentColor[0] = currentColor[1] = currentColor[2] = currentColor[3] = Float.NaN;
+    }
+
     /**
      * Set white color (common for textured rendering)
      */
@@ -183,42 +471,192 @@ public class GlStateManager {
      * Disable depth testing (common for 2D)
      */
     public static void disableDepthTest() {
-        glDisable(GL_DEPTH_TEST);
+        if (track(depthTestEnabled)) {
+            glDisable(GL_DEPTH_TEST);
+            depthTestEnabled = false;
+        }
     }
 
     /**
      * Enable depth testing
      */
     public static void enableDepthTest() {
-        glEnable(GL_DEPTH_TEST);
+        if (track(!depthTestEnabled)) {
+            glEnable(GL_DEPTH_TEST);
+            depthTestEnabled = true;
+        }
     }
 
     /**
-     * Prepare for texture rendering
+     * Set the viewport rectangle - only if different from current
      */
-    public static void prepareTextureRender() {
-        enableTexture2D();
-        enableBlend();
-        setBlendFunc(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA);
-        setColorWhite();
+    public static void setViewport(int x, int y, int width, int height) {
+        if (track(viewportX != x || viewportY != y || viewportW != width || viewportH != height)) {
+            glViewport(x, y, width, height);
+            viewportX = x;
+            viewportY = y;
+            viewportW = width;
+            viewportH = height;
+        }
     }
 
     /**
-     * Prepare for colored shape rendering (no texture)
+     * Set the clear color - only if different from current
      */
-    public static void prepareColoredRender() {
-        disableTexture2D();
-        enableBlend();
-        setBlendFunc(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA);
+    public static void setClearColor(float r, float g, float b, float a) {
+        if (track(clearColor[0] != r || clearColor[1] != g || clearColor[2] != b || clearColor[3] != a)) {
+            glClearColor(r, g, b, a);
+            clearColor[0] = r;
+            clearColor[1] = g;
+            clearColor[2] = b;
+            clearColor[3] = a;
+        }
     }
 
     /**
-     * Prepare for text rendering
+     * Clear the buffers in {@code mask} of the bound framebuffer
      */
-    public static void prepareTextRender() {
+    public static void clear(int mask) {
+        glClear(mask);
+        issuedCalls++;
+    }
+
+    /**
+     * Bind a vertex array object - only if different from current
+     */
+    public static void bindVertexArray(int vertexArray) {
+        if (track(boundVertexArray != vertexArray)) {
+            GL30.glBindVertexArray(vertexArray);
+            boundVertexArray = vertexArray;
+        }
+    }
+
+    // =================== OBJECT CREATION ===================
+    // Everything is created here so deleted names can be dropped from the caches before GL reuses them
+
+    public static int genTexture() {
+        issuedCalls++;
+        return glGenTextures();
+    }
+
+    public static int genBuffer() {
+        issuedCalls++;
+        return glGenBuffers();
+    }
+
+    public static int genFramebuffer() {
+        issuedCalls++;
+        return GL30.glGenFramebuffers();
+    }
+
+    public static int genVertexArray() {
+        issuedCalls++;
+        return GL30.glGenVertexArrays();
+    }
+
+    public static int createProgram() {
+        issuedCalls++;
+        return glCreateProgram();
+    }
+
+    public static int genQuery() {
+        issuedCalls++;
+        return glGenQueries();
+    }
+
+    public static void deleteQuery(int queryId) {
+        glDeleteQueries(queryId);
+        issuedCalls++;
+    }
+
+    /**
+     * Delete a shader program and drop it from the binding cache
+     */
+    public static void deleteProgram(int programId) {
+        if (boundProgram == programId) {
+            glUseProgram(0);
+            boundProgram = 0;
+        }
+        glDeleteProgram(programId);
+        issuedCalls++;
+    }
+
+    /**
+     * Delete a vertex array object and drop it from the binding cache
+     */
+    public static void deleteVertexArray(int vertexArray) {
+        if (boundVertexArray == vertexArray) {
+            GL30.glBindVertexArray(0);
+            boundVertexArray = 0;
+        }
+        GL30.glDeleteVertexArrays(vertexArray);
+        issuedCalls++;
+    }
+
+    /**
+     * Count a state call against the redundant-call statistics
+     *
+     * @return {@code changed}, for use as the guard of the GL call
+     */
+    private static boolean track(boolean changed) {
+        if (changed) {
+            issuedCalls++;
+        } else {
+            skippedCalls++;
+        }
+        return changed;
+    }
+
+    /**
+     * GL state calls issued so far in the current frame
+     */
+    public static int getFrameIssuedCallCount() {
+        return issuedCalls;
+    }
+
+    /**
+     * Redundant state calls skipped so far in the current frame
+     */
+    public static int getFrameSkippedCallCount() {
+        return skippedCalls;
+    }
+
+    /**
+     * Texture binds sent to GL since startup
+     */
+    public static long getTextureBindCount() {
+        return textureBindCount;
+    }
+
+    /**
+     * Model-view matrix uploads since startup
+     */
+    public static long getMatrixUploadCount() {
+        return matrixUploadCount;
+    }
+
+    /**
+     * GL state calls issued during the last complete frame
+     */
+    public static int getIssuedCallCount() {
+        return lastFrameIssuedCalls;
+    }
+
+    /**
+     * State calls skipped during the last complete frame because GL already had that state
+     */
+    public static int getSkippedCallCount() {
+        return lastFrameSkippedCalls;
+    }
+
+    /**
+     * Prepare for batched quad rendering.
+     * Color comes from the vertex data, untextured quads sample a white texel.
+     * The blend function is set per draw call from its {@code BlendMode}.
+     */
+    public static void prepareBatchRender() {
         enableTexture2D();
         enableBlend();
-        setBlendFunc(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA);
     }
 
     /**
@@ -228,12 +666,26 @@ public class GlStateManager {
         blendEnabled = false;
         blendSrcFactor = -1;
         blendDstFactor = -1;
+        blendSrcAlphaFactor = -1;
+        blendDstAlphaFactor = -1;
+        boundFramebuffer = 0;
+        boundVertexArray = 0;
+        depthTestEnabled = false;
+        viewportX = viewportY = viewportW = viewportH = -1;
+        clearColor[0] = clearColor[1] = clearColor[2] = clearColor[3] = 0.0f;
         textureEnabled = false;
-        boundTexture = -1;
+        scissorEnabled = false;
+        scissorX = scissorY = scissorWidth = scissorHeight = -1;
+        Arrays.fill(boundTextures, -1);
+        activeTextureUnit = 0;
+        boundProgram = 0;
+        enabledAttribArrays = 0;
+        instancedAttribArrays = 0;
+        boundVertexBuffer = 0;
+        boundIndexBuffer = 0;
         currentColor[0] = currentColor[1] = currentColor[2] = currentColor[3] = 1.0f;
         projectionSet = false;
-        matrixDirty = true;
-        lastAppliedMatrix.identity();
+        appliedMatrixStamp = UNKNOWN_STAMP;
     }
 
     /**
@@ -250,6 +702,20 @@ public class GlStateManager {
         return viewportHeight;
     }
 
+    /**
+     * Width of the current render target (the window unless a framebuffer is bound)
+     */
+    public static int getRenderWidth() {
+        return renderWidth;
+    }
+
+    /**
+     * Height of the current render target
+     */
+    public static int getRenderHeight() {
+        return renderHeight;
+    }
+
     /**
      * Update viewport size
      */
@@ -257,9 +723,12 @@ public class GlStateManager {
         if (viewportWidth != width || viewportHeight != height) {
             viewportWidth = width;
             viewportHeight = height;
-            projectionSet = false; // Force projection matrix update
+            if (boundFramebuffer != 0) return; // Applied when rendering returns to the window
 
-            glViewport(0, 0, width, height);
+            renderWidth = width;
+            renderHeight = height;
+            setViewport(0, 0, width, height);
+            applyProjection();
             LOGGER.debug("Viewport updated: {}x{}", width, height);
         }
     }
@@ -268,6 +737,11 @@ public class GlStateManager {
      * Cleanup resources
      */
     public static void cleanup() {
+        if (vertexArrayId != 0) {
+            deleteVertexArray(vertexArrayId);
+            vertexArrayId = 0;
+        }
+        ShaderManager.cleanup();
         memFree(matrixBuffer);
         LOGGER.info("GlStateManager cleaned up");
     }
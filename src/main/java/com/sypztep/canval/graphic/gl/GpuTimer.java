@@ -0,0 +1,167 @@
+package com.sypztep.canval.graphic.gl;
+
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GLCapabilities;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL33.GL_TIME_ELAPSED;
+import static org.lwjgl.opengl.GL33.glGetQueryObjectui64;
+
+/**
+ * GPU time per render pass, measured with {@code GL_TIME_ELAPSED} queries.
+ * <p>
+ * Each frame uses its own set of query objects out of {@link #FRAMES_IN_FLIGHT}; a set is read back
+ * when it comes round again, so results describe the frame that many frames ago and the CPU never
+ * waits on the GPU. A set that is still not finished by then is dropped rather than waited for.
+ * <p>
+ * Only one time-elapsed query can run at a time, so nested passes are folded into the outermost one.
+ */
+public final class GpuTimer {
+    private static final Logger LOGGER = LoggerFactory.getLogger(GpuTimer.class);
+    public static final int FRAMES_IN_FLIGHT = 4;
+    private static final int INITIAL_QUERIES = 32;
+
+    public enum Pass {
+        BATCH,          // Sorted batch flushes
+        INSTANCES,      // Instanced sprite draws
+        RENDER_LIST,    // Retained list replays
+        TEXT            // Font atlas texture uploads: new glyphs and atlas growth; glyph quads count under BATCH
+    }
+
+    private static final Pass[] PASSES = Pass.values();
+
+    private final int[][] queries = new int[FRAMES_IN_FLIGHT][INITIAL_QUERIES];
+    private final byte[][] queryPasses = new byte[FRAMES_IN_FLIGHT][INITIAL_QUERIES];
+    private final int[] queryCounts = new int[FRAMES_IN_FLIGHT];
+    private final long[] resultNanos = new long[PASSES.length];
+    private boolean hasResults = false;
+    private long droppedFrames = 0;
+
+    private int frameSlot = -1;
+    private int depth = 0;
+    private boolean queryActive = false;
+
+    /**
+     * Check whether the context supports time-elapsed queries (GL 3.3 or ARB_timer_query)
+     */
+    public static boolean isSupported() {
+        GLCapabilities caps = GL.getCapabilities();
+        return caps.OpenGL33 || caps.GL_ARB_timer_query;
+    }
+
+    /**
+     * Move to the next query set, reading back the results it held
+     */
+    public void beginFrame() {
+        if (depth != 0) {
+            LOGGER.warn("{} GPU timer pass(es) left open at the end of the frame", depth);
+            depth = 1;
+            end();
+        }
+
+        frameSlot = (frameSlot + 1) % FRAMES_IN_FLIGHT;
+        if (queryCounts[frameSlot] > 0) {
+            resolve(frameSlot);
+            queryCounts[frameSlot] = 0;
+        }
+    }
+
+    private void resolve(int slot) {
+        int count = queryCounts[slot];
+        int[] ids = queries[slot];
+
+        // Queries finish in submission order, so the last one decides for the whole set
+        if (glGetQueryObjecti(ids[count - 1], GL_QUERY_RESULT_AVAILABLE) == GL_FALSE) {
+            droppedFrames++;
+            hasResults = false;
+            return;
+        }
+
+        Arrays.fill(resultNanos, 0L);
+        byte[] passes = queryPasses[slot];
+        for (int i = 0; i < count; i++) {
+            resultNanos[passes[i]] += glGetQueryObjectui64(ids[i], GL_QUERY_RESULT);
+        }
+        hasResults = true;
+    }
+
+    /**
+     * Start timing a pass. Calls nest; only the outermost pass issues a query.
+     */
+    public void begin(Pass pass) {
+        if (depth++ > 0 || frameSlot < 0) return;
+
+        int slot = frameSlot;
+        int index = queryCounts[slot];
+        if (index == queries[slot].length) {
+            queries[slot] = Arrays.copyOf(queries[slot], index * 2);
+            queryPasses[slot] = Arrays.copyOf(queryPasses[slot], index * 2);
+        }
+        if (queries[slot][index] == 0) {
+            queries[slot][index] = GlStateManager.genQuery();
+        }
+        queryPasses[slot][index] = (byte) pass.ordinal();
+        queryCounts[slot] = index + 1;
+
+        glBeginQuery(GL_TIME_ELAPSED, queries[slot][index]);
+        queryActive = true;
+    }
+
+    public void end() {
+        if (depth == 0) return;
+        if (--depth > 0) return;
+
+        if (queryActive) {
+            glEndQuery(GL_TIME_ELAPSED);
+            queryActive = false;
+        }
+    }
+
+    /**
+     * GPU nanoseconds spent in {@code pass} during the frame {@link #FRAMES_IN_FLIGHT} frames ago
+     */
+    public long getPassNanos(Pass pass) {
+        return hasResults ? resultNanos[pass.ordinal()] : 0L;
+    }
+
+    public long getTotalNanos() {
+        if (!hasResults) return 0L;
+        long total = 0;
+        for (long nanos : resultNanos) total += nanos;
+        return total;
+    }
+
+    /**
+     * Whether the last read-back produced results (false until the first set comes round, or after a drop)
+     */
+    public boolean hasResults() {
+        return hasResults;
+    }
+
+    /**
+     * Query sets discarded because the GPU had not finished them in time
+     */
+    public long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    public void cleanup() {
+        if (queryActive) {
+            glEndQuery(GL_TIME_ELAPSED);
+            queryActive = false;
+        }
+        for (int[] ids : queries) {
+            for (int id : ids) {
+                if (id != 0) GlStateManager.deleteQuery(id);
+            }
+            Arrays.fill(ids, 0);
+        }
+        Arrays.fill(queryCounts, 0);
+        depth = 0;
+        hasResults = false;
+    }
+}
@@ -0,0 +1,65 @@
+package com.sypztep.canval.graphic.gl;
+
+import org.lwjgl.system.MemoryUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ShortBuffer;
+
+import static org.lwjgl.opengl.GL15.*;
+
+/**
+ * Static index buffer shared by every quad batch.
+ * Quads are stored as four vertices (top-left, top-right, bottom-right, bottom-left)
+ * and split into the triangles 0-1-2 and 2-3-0.
+ */
+public class QuadIndexBuffer {
+    private static final Logger LOGGER = LoggerFactory.getLogger(QuadIndexBuffer.class);
+
+    // 16-bit indices address at most 65536 vertices per draw
+    public static final int MAX_QUADS = 65536 / 4;
+    public static final int INDICES_PER_QUAD = 6;
+    public static final int INDEX_TYPE = GL_UNSIGNED_SHORT;
+
+    private final int bufferId;
+
+    public QuadIndexBuffer() {
+        ShortBuffer indices = MemoryUtil.memAllocShort(MAX_QUADS * INDICES_PER_QUAD);
+        try {
+            for (int quad = 0; quad < MAX_QUADS; quad++) {
+                int base = quad * 4;
+                indices.put((short) base);
+                indices.put((short) (base + 1));
+                indices.put((short) (base + 2));
+                indices.put((short) (base + 2));
+                indices.put((short) (base + 3));
+                indices.put((short) base);
+            }
+            indices.flip();
+
+            bufferId = GlStateManager.genBuffer();
+            GlStateManager.bindIndexBuffer(bufferId);
+            glBufferData(GL_ELEMENT_ARRAY_BUFFER, indices, GL_STATIC_DRAW);
+        } finally {
+            MemoryUtil.memFree(indices);
+        }
+
+        LOGGER.debug("Created quad index buffer {} ({} quads)", bufferId, MAX_QUADS);
+    }
+
+    /**
+     * Bind this buffer as the current element array buffer
+     */
+    public void bind() {
+        GlStateManager.bindIndexBuffer(bufferId);
+    }
+
+    public int getBufferId() {
+        return bufferId;
+    }
+
+    public void cleanup() {
+        GlStateManager.deleteBuffer(bufferId);
+        LOGGER.debug("Deleted quad index buffer {}", bufferId);
+    }
+}
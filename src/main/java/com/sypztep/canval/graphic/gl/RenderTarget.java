@@ -0,0 +1,103 @@
+package com.sypztep.canval.graphic.gl;
+
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GLCapabilities;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+
+import static org.lwjgl.opengl.GL30.*;
+
+/**
+ * Framebuffer object with a single RGBA color texture.
+ * Content is rendered with premultiplied alpha, so it composites with {@code GL_ONE, GL_ONE_MINUS_SRC_ALPHA}.
+ * Rows are stored bottom-up: sample the texture with v = 1 at the top edge.
+ */
+public final class RenderTarget {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RenderTarget.class);
+
+    private final int width;
+    private final int height;
+    private int framebufferId;
+    private int textureId;
+    long lastUsedFrame;
+
+    public RenderTarget(int width, int height) {
+        this.width = width;
+        this.height = height;
+
+        textureId = GlStateManager.genTexture();
+        GlStateManager.bindTexture(textureId);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
+        glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA8, width, height, 0, GL_RGBA, GL_UNSIGNED_BYTE, (ByteBuffer) null);
+
+        framebufferId = GlStateManager.genFramebuffer();
+        int previous = GlStateManager.getBoundFramebuffer();
+        GlStateManager.bindFramebuffer(framebufferId);
+        glFramebufferTexture2D(GL_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, GL_TEXTURE_2D, textureId, 0);
+
+        int status = glCheckFramebufferStatus(GL_FRAMEBUFFER);
+        GlStateManager.bindFramebuffer(previous);
+        if (status != GL_FRAMEBUFFER_COMPLETE) {
+            cleanup();
+            throw new RuntimeException("Incomplete framebuffer " + width + "x" + height + ": 0x" + Integer.toHexString(status));
+        }
+
+        LOGGER.debug("Created render target {}x{}", width, height);
+    }
+
+    /**
+     * Check whether the context supports framebuffer objects
+     */
+    public static boolean isSupported() {
+        GLCapabilities caps = GL.getCapabilities();
+        return caps.OpenGL30 || caps.GL_ARB_framebuffer_object;
+    }
+
+    /**
+     * Clear to fully transparent. The scissor test must be off for a full clear.
+     */
+    public void clear() {
+        GlStateManager.disableScissor();
+        GlStateManager.setClearColor(0.0f, 0.0f, 0.0f, 0.0f);
+        GlStateManager.clear(GL_COLOR_BUFFER_BIT);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getFramebufferId() {
+        return framebufferId;
+    }
+
+    public int getTextureId() {
+        return textureId;
+    }
+
+    /**
+     * Approximate GPU memory used by the color texture
+     */
+    public long getMemorySize() {
+        return (long) width * height * 4;
+    }
+
+    public void cleanup() {
+        if (framebufferId != 0) {
+            GlStateManager.deleteFramebuffer(framebufferId);
+            framebufferId = 0;
+        }
+        if (textureId != 0) {
+            GlStateManager.deleteTexture(textureId);
+            textureId = 0;
+        }
+    }
+}
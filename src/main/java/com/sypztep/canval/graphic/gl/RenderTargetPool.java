@@ -0,0 +1,81 @@
+package com.sypztep.canval.graphic.gl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Reuses {@link RenderTarget}s across frames, keyed by size.
+ * Targets that sat unused for {@link #MAX_IDLE_FRAMES} frames are deleted.
+ */
+public class RenderTargetPool {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RenderTargetPool.class);
+    private static final int MAX_IDLE_FRAMES = 120;
+
+    private final Map<Long, ArrayDeque<RenderTarget>> freeTargets = new HashMap<>();
+    private long frame = 0;
+    private int liveTargets = 0;
+
+    /**
+     * Take a target of exactly this size, creating one only if none is free
+     */
+    public RenderTarget acquire(int width, int height) {
+        ArrayDeque<RenderTarget> free = freeTargets.get(sizeKey(width, height));
+        RenderTarget target = free != null ? free.pollLast() : null;
+        if (target == null) {
+            target = new RenderTarget(width, height);
+            liveTargets++;
+        }
+        return target;
+    }
+
+    /**
+     * Return a target for later reuse
+     */
+    public void release(RenderTarget target) {
+        target.lastUsedFrame = frame;
+        freeTargets.computeIfAbsent(sizeKey(target.getWidth(), target.getHeight()), key -> new ArrayDeque<>())
+                .addLast(target);
+    }
+
+    /**
+     * Advance the frame counter and delete targets that have been idle too long
+     */
+    public void endFrame() {
+        frame++;
+
+        for (Iterator<ArrayDeque<RenderTarget>> sizes = freeTargets.values().iterator(); sizes.hasNext(); ) {
+            ArrayDeque<RenderTarget> free = sizes.next();
+            // Oldest releases sit at the front
+            while (!free.isEmpty() && frame - free.peekFirst().lastUsedFrame > MAX_IDLE_FRAMES) {
+                free.pollFirst().cleanup();
+                liveTargets--;
+            }
+            if (free.isEmpty()) sizes.remove();
+        }
+    }
+
+    /**
+     * Number of targets currently allocated, in use or free
+     */
+    public int getTargetCount() {
+        return liveTargets;
+    }
+
+    private static long sizeKey(int width, int height) {
+        return ((long) width << 32) | (height & 0xFFFFFFFFL);
+    }
+
+    public void cleanup() {
+        for (ArrayDeque<RenderTarget> free : freeTargets.values()) {
+            for (RenderTarget target : free) target.cleanup();
+        }
+        freeTargets.clear();
+        liveTargets = 0;
+        LOGGER.debug("RenderTargetPool cleaned up");
+    }
+}
@@ -0,0 +1,96 @@
+package com.sypztep.canval.graphic.gl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL30.*;
+import static org.lwjgl.system.MemoryUtil.NULL;
+
+/**
+ * Ring-buffer VBO used to stream per-frame vertex data.
+ * Each batch is written straight into a mapped, unsynchronized range of the buffer
+ * through its raw address, so mapping never allocates a Java-side buffer wrapper.
+ * When the ring wraps the whole store is orphaned, so the driver can hand us fresh
+ * memory while the GPU is still reading the previous contents.
+ */
+public class StreamingVertexBuffer {
+    private static final Logger LOGGER = LoggerFactory.getLogger(StreamingVertexBuffer.class);
+
+    private final int bufferId;
+    private final int capacity;
+    private int writeOffset = 0;
+    private int mappedOffset = -1;
+
+    public StreamingVertexBuffer(int capacityBytes) {
+        this.capacity = capacityBytes;
+        this.bufferId = GlStateManager.genBuffer();
+
+        GlStateManager.bindVertexBuffer(bufferId);
+        glBufferData(GL_ARRAY_BUFFER, capacity, GL_STREAM_DRAW);
+
+        LOGGER.debug("Created streaming vertex buffer {} ({} KiB)", bufferId, capacity / 1024);
+    }
+
+    /**
+     * Map the next {@code size} bytes of the ring for writing.
+     * The returned address must be released with {@link #end()}; write it with {@code MemoryUtil.memPut*}.
+     */
+    public long begin(int size) {
+        if (size > capacity) {
+            throw new IllegalArgumentException("Batch of " + size + " bytes exceeds streaming buffer capacity " + capacity);
+        }
+        if (mappedOffset != -1) {
+            throw new IllegalStateException("Streaming vertex buffer is already mapped");
+        }
+
+        GlStateManager.bindVertexBuffer(bufferId);
+
+        int access = GL_MAP_WRITE_BIT | GL_MAP_UNSYNCHRONIZED_BIT | GL_MAP_INVALIDATE_RANGE_BIT;
+        if (writeOffset + size > capacity) {
+            // Orphan the old store instead of waiting for the GPU to finish with it
+            glBufferData(GL_ARRAY_BUFFER, capacity, GL_STREAM_DRAW);
+            writeOffset = 0;
+        }
+
+        long address = nglMapBufferRange(GL_ARRAY_BUFFER, writeOffset, size, access);
+        if (address == NULL) {
+            throw new IllegalStateException("Failed to map streaming vertex buffer " + bufferId);
+        }
+
+        mappedOffset = writeOffset;
+        writeOffset += size;
+        return address;
+    }
+
+    /**
+     * Unmap the range returned by {@link #begin(int)}.
+     *
+     * @return byte offset of the written range inside the VBO, for use with attribute pointers
+     */
+    public long end() {
+        if (mappedOffset == -1) {
+            throw new IllegalStateException("Streaming vertex buffer is not mapped");
+        }
+
+        GlStateManager.bindVertexBuffer(bufferId);
+        glUnmapBuffer(GL_ARRAY_BUFFER);
+
+        long offset = mappedOffset;
+        mappedOffset = -1;
+        return offset;
+    }
+
+    public int getBufferId() {
+        return bufferId;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public void cleanup() {
+        GlStateManager.deleteBuffer(bufferId);
+        LOGGER.debug("Deleted streaming vertex buffer {}", bufferId);
+    }
+}
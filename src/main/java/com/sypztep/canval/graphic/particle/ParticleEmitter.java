@@ -0,0 +1,259 @@
+package com.sypztep.canval.graphic.particle;
+
+import com.sypztep.canval.graphic.RenderSystem;
+import com.sypztep.canval.graphic.SpriteInstances;
+
+import java.io.Serial;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Screen-space particles (rain, snow, petals, sparkles) stored as parallel primitive arrays.
+ * <pre>
+ * ParticleEmitter rain = new ParticleEmitter(20000);
+ * rain.setAcceleration(30, 900);
+ * rain.setBounds(0, -50, width, height);
+ * // every frame
+ * for (int i = 0; i < 40; i++) rain.spawn(random.nextFloat() * width, -10, 0, 600, 2.0f, 3, 0xAA99BBFF);
+ * rain.update(ctx.getDeltaTime());
+ * ctx.drawParticles(rain);
+ * </pre>
+ * Live particles are always packed at the front of the arrays; dead ones are swapped out after each update.
+ * Emitters above {@link #PARALLEL_THRESHOLD} particles integrate on the common ForkJoin pool.
+ */
+public class ParticleEmitter {
+    public static final int PARALLEL_THRESHOLD = 16384;
+    private static final int SPLIT_SIZE = 4096;
+
+    private final int capacity;
+    private final float[] x, y;
+    private final float[] velocityX, velocityY;
+    private final float[] life, maxLife;
+    private final float[] size;
+    private final int[] color; // ARGB
+    private int count = 0;
+
+    private float accelerationX = 0.0f, accelerationY = 0.0f;
+    private float drag = 0.0f;
+    private boolean fadeOut = true;
+    private boolean bounded = false;
+    private float minX, minY, maxX, maxY;
+    private boolean parallel = true;
+
+    private final SpriteInstances instances;
+
+    // Last update stats
+    private long lastUpdateNanos = 0;
+    private int lastUpdateCount = 0;
+
+    public ParticleEmitter(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Particle capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.x = new float[capacity];
+        this.y = new float[capacity];
+        this.velocityX = new float[capacity];
+        this.velocityY = new float[capacity];
+        this.life = new float[capacity];
+        this.maxLife = new float[capacity];
+        this.size = new float[capacity];
+        this.color = new int[capacity];
+        this.instances = new SpriteInstances(Math.min(capacity, 4096));
+    }
+
+    /**
+     * Add one particle. Ignored when the emitter is full.
+     *
+     * @param lifetime seconds until the particle disappears
+     * @param argb     color as 0xAARRGGBB
+     * @return false if there was no room
+     */
+    public boolean spawn(float px, float py, float vx, float vy, float lifetime, float particleSize, int argb) {
+        if (count == capacity || lifetime <= 0.0f) return false;
+
+        int i = count++;
+        x[i] = px;
+        y[i] = py;
+        velocityX[i] = vx;
+        velocityY[i] = vy;
+        life[i] = lifetime;
+        maxLife[i] = lifetime;
+        size[i] = particleSize;
+        color[i] = argb;
+        return true;
+    }
+
+    /**
+     * Integrate all particles by {@code deltaTime} seconds and drop the ones that expired or left the bounds
+     */
+    public void update(float deltaTime) {
+        long start = System.nanoTime();
+        int updated = count;
+
+        if (parallel && count >= PARALLEL_THRESHOLD) {
+            ForkJoinPool.commonPool().invoke(new UpdateTask(0, count, deltaTime));
+        } else {
+            integrate(0, count, deltaTime);
+        }
+        compact();
+
+        lastUpdateNanos = System.nanoTime() - start;
+        lastUpdateCount = updated;
+    }
+
+    private void integrate(int from, int to, float deltaTime) {
+        float ax = accelerationX * deltaTime;
+        float ay = accelerationY * deltaTime;
+        float damping = drag > 0.0f ? Math.max(0.0f, 1.0f - drag * deltaTime) : 1.0f;
+
+        for (int i = from; i < to; i++) {
+            float vx = (velocityX[i] + ax) * damping;
+            float vy = (velocityY[i] + ay) * damping;
+            velocityX[i] = vx;
+            velocityY[i] = vy;
+            x[i] += vx * deltaTime;
+            y[i] += vy * deltaTime;
+            life[i] -= deltaTime;
+        }
+
+        if (bounded) {
+            for (int i = from; i < to; i++) {
+                if (x[i] < minX || x[i] > maxX || y[i] < minY || y[i] > maxY) life[i] = 0.0f;
+            }
+        }
+    }
+
+    // Swap dead particles with the last live one; order is not preserved
+    private void compact() {
+        int i = 0;
+        while (i < count) {
+            if (life[i] > 0.0f) {
+                i++;
+                continue;
+            }
+            int last = --count;
+            x[i] = x[last];
+            y[i] = y[last];
+            velocityX[i] = velocityX[last];
+            velocityY[i] = velocityY[last];
+            life[i] = life[last];
+            maxLife[i] = maxLife[last];
+            size[i] = size[last];
+            color[i] = color[last];
+        }
+    }
+
+    private final class UpdateTask extends RecursiveAction {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        private final int from, to;
+        private final float deltaTime;
+
+        UpdateTask(int from, int to, float deltaTime) {
+            this.from = from;
+            this.to = to;
+            this.deltaTime = deltaTime;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SPLIT_SIZE) {
+                integrate(from, to, deltaTime);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new UpdateTask(from, middle, deltaTime), new UpdateTask(middle, to, deltaTime));
+        }
+    }
+
+    /**
+     * Write the live particles as sprite instances, centered on their position
+     */
+    public SpriteInstances buildInstances() {
+        instances.clear();
+        for (int i = 0; i < count; i++) {
+            int argb = color[i];
+            int alpha = argb >>> 24;
+            if (fadeOut) alpha = (int) (alpha * (life[i] / maxLife[i]));
+            instances.add(x[i], y[i], size[i], size[i],
+                    RenderSystem.packColor((argb >> 16) & 0xFF, (argb >> 8) & 0xFF, argb & 0xFF, alpha), 0.0f);
+        }
+        return instances;
+    }
+
+    /**
+     * Constant acceleration in pixels per second squared (gravity, wind)
+     */
+    public void setAcceleration(float ax, float ay) {
+        this.accelerationX = ax;
+        this.accelerationY = ay;
+    }
+
+    /**
+     * Fraction of velocity lost per second
+     */
+    public void setDrag(float drag) {
+        this.drag = drag;
+    }
+
+    /**
+     * Fade alpha out linearly over each particle's lifetime (default on)
+     */
+    public void setFadeOut(boolean fadeOut) {
+        this.fadeOut = fadeOut;
+    }
+
+    /**
+     * Kill particles that leave this rectangle
+     */
+    public void setBounds(float minX, float minY, float maxX, float maxY) {
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+        this.bounded = true;
+    }
+
+    public void clearBounds() {
+        bounded = false;
+    }
+
+    /**
+     * Allow splitting large updates across the ForkJoin common pool (default on)
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    public void clear() {
+        count = 0;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Throughput of the last {@link #update}, for profiling large emitters
+     */
+    public double getParticlesPerMillisecond() {
+        return lastUpdateNanos > 0 ? lastUpdateCount / (lastUpdateNanos / 1_000_000.0) : 0.0;
+    }
+
+    public long getLastUpdateNanos() {
+        return lastUpdateNanos;
+    }
+
+    /**
+     * Free the native instance buffer. The emitter cannot be drawn afterwards.
+     */
+    public void cleanup() {
+        instances.cleanup();
+    }
+}
@@ -0,0 +1,144 @@
+package com.sypztep.canval.graphic.shader;
+
+import com.sypztep.canval.CanvalConfig;
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GLCapabilities;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+import static org.lwjgl.opengl.GL41.*;
+
+/**
+ * On-disk cache of linked program binaries ({@code glProgramBinary}), so later
+ * launches skip compiling and linking. Entries are keyed by the shader sources,
+ * attribute bindings and the driver, so a driver update simply misses the cache.
+ * <p>
+ * File layout: binary format (int, big-endian) followed by the driver's blob.
+ */
+public final class ProgramBinaryCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ProgramBinaryCache.class);
+
+    private static Boolean supported;
+
+    private ProgramBinaryCache() {
+    }
+
+    /**
+     * Check whether the driver can hand out program binaries at all
+     */
+    public static boolean isSupported() {
+        if (supported == null) {
+            GLCapabilities caps = GL.getCapabilities();
+            supported = CanvalConfig.isShaderCacheEnabled()
+                    && (caps.OpenGL41 || caps.GL_ARB_get_program_binary)
+                    && glGetInteger(GL_NUM_PROGRAM_BINARY_FORMATS) > 0;
+        }
+        return supported;
+    }
+
+    /**
+     * Build the cache key for a program
+     */
+    static String key(String name, String vertexSource, String fragmentSource, String... attributes) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(glGetString(GL_RENDERER).getBytes(StandardCharsets.UTF_8));
+            digest.update(glGetString(GL_VERSION).getBytes(StandardCharsets.UTF_8));
+            digest.update(vertexSource.getBytes(StandardCharsets.UTF_8));
+            digest.update(fragmentSource.getBytes(StandardCharsets.UTF_8));
+            for (String attribute : attributes) {
+                digest.update(attribute.getBytes(StandardCharsets.UTF_8));
+            }
+            return name + "-" + HexFormat.of().formatHex(digest.digest(), 0, 12);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Try to load a cached binary into {@code programId}
+     *
+     * @return true if the program is linked and ready to use
+     */
+    static boolean load(int programId, String key) {
+        if (!isSupported()) return false;
+
+        Path file = cacheFile(key);
+        if (!Files.isRegularFile(file)) return false;
+
+        ByteBuffer binary = null;
+        try {
+            byte[] bytes = Files.readAllBytes(file);
+            if (bytes.length <= Integer.BYTES) return false;
+
+            int format = ByteBuffer.wrap(bytes).getInt();
+            binary = MemoryUtil.memAlloc(bytes.length - Integer.BYTES);
+            binary.put(bytes, Integer.BYTES, bytes.length - Integer.BYTES).flip();
+
+            glProgramBinary(programId, format, binary);
+            if (glGetProgrami(programId, GL_LINK_STATUS) == GL_TRUE) {
+                LOGGER.debug("Loaded shader program binary {}", key);
+                return true;
+            }
+            LOGGER.debug("Driver rejected cached program binary {}", key);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to read shader cache {}", file, e);
+        } finally {
+            if (binary != null) MemoryUtil.memFree(binary);
+        }
+        return false;
+    }
+
+    /**
+     * Ask the driver to keep the binary of a program that is about to be linked
+     */
+    static void prepare(int programId) {
+        if (isSupported()) {
+            glProgramParameteri(programId, GL_PROGRAM_BINARY_RETRIEVABLE_HINT, GL_TRUE);
+        }
+    }
+
+    /**
+     * Write the binary of a freshly linked program to disk
+     */
+    static void store(int programId, String key) {
+        if (!isSupported()) return;
+
+        int length = glGetProgrami(programId, GL_PROGRAM_BINARY_LENGTH);
+        if (length <= 0) return;
+
+        ByteBuffer binary = MemoryUtil.memAlloc(length);
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            IntBuffer format = stack.mallocInt(1);
+            glGetProgramBinary(programId, null, format, binary);
+
+            byte[] bytes = new byte[Integer.BYTES + length];
+            ByteBuffer.wrap(bytes).putInt(format.get(0)).put(binary);
+
+            Path file = cacheFile(key);
+            Files.createDirectories(file.getParent());
+            Files.write(file, bytes);
+            LOGGER.debug("Stored shader program binary {} ({} bytes)", key, length);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to write shader cache for {}", key, e);
+        } finally {
+            MemoryUtil.memFree(binary);
+        }
+    }
+
+    private static Path cacheFile(String key) {
+        return Path.of(CanvalConfig.getShaderCacheDirectory(), key + ".bin");
+    }
+}
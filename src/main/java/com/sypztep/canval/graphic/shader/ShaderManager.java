@@ -0,0 +1,96 @@
+package com.sypztep.canval.graphic.shader;
+
+import com.sypztep.canval.util.ResourceLocation;
+import com.sypztep.canval.util.ResourceManager;
+import org.joml.Matrix4f;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Owns every shader program and the matrices they share.
+ * Programs declare {@code u_Projection} and {@code u_ModelView}; each program uploads
+ * them lazily on bind, and only when the value changed since its last upload.
+ */
+public final class ShaderManager {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ShaderManager.class);
+
+    private static final List<ShaderProgram> programs = new ArrayList<>();
+
+    private static final Matrix4f projection = new Matrix4f();
+    private static final Matrix4f modelView = new Matrix4f();
+    private static int projectionVersion = 0;
+    private static int modelViewVersion = 0;
+
+    private ShaderManager() {
+    }
+
+    /**
+     * Load, compile and link a program from {@code assets/shaders/<name>.vsh} and {@code .fsh}.
+     *
+     * @param defines    lines inserted right after the {@code #version} directive, e.g. {@code "#define SLOTS 8"}
+     * @param attributes attribute names, bound to locations 0, 1, 2... in order
+     */
+    public static ShaderProgram load(String name, String defines, String... attributes) {
+        String vertexSource = ResourceManager.loadShaderSource(ResourceLocation.of(name + ".vsh"));
+        String fragmentSource = injectDefines(
+                ResourceManager.loadShaderSource(ResourceLocation.of(name + ".fsh")), defines);
+
+        ShaderProgram program = new ShaderProgram(name, injectDefines(vertexSource, defines), fragmentSource, attributes);
+        programs.add(program);
+        return program;
+    }
+
+    private static String injectDefines(String source, String defines) {
+        if (defines == null || defines.isEmpty()) return source;
+
+        int versionEnd = source.indexOf('\n', source.indexOf("#version"));
+        return source.substring(0, versionEnd + 1) + defines + "\n" + source.substring(versionEnd + 1);
+    }
+
+    /**
+     * Set the projection matrix for every program
+     */
+    public static void setProjection(Matrix4f matrix) {
+        projection.set(matrix);
+        projectionVersion++;
+    }
+
+    /**
+     * Set the model-view matrix for every program. {@link com.sypztep.canval.graphic.gl.GlStateManager}
+     * only calls this when the matrix stamp changed.
+     */
+    public static void setModelView(Matrix4f matrix) {
+        modelView.set(matrix);
+        modelViewVersion++;
+    }
+
+    static Matrix4f getProjection() {
+        return projection;
+    }
+
+    static Matrix4f getModelView() {
+        return modelView;
+    }
+
+    static int getProjectionVersion() {
+        return projectionVersion;
+    }
+
+    static int getModelViewVersion() {
+        return modelViewVersion;
+    }
+
+    /**
+     * Delete every program created through {@link #load}
+     */
+    public static void cleanup() {
+        for (ShaderProgram program : programs) {
+            program.cleanup();
+        }
+        programs.clear();
+        LOGGER.debug("ShaderManager cleaned up");
+    }
+}
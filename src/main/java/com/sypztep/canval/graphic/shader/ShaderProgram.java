@@ -0,0 +1,147 @@
+package com.sypztep.canval.graphic.shader;
+
+import com.sypztep.canval.graphic.gl.GlStateManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.lwjgl.opengl.GL20.*;
+
+/**
+ * Linked GLSL program built from a vertex and fragment source.
+ * Attribute names are bound to locations in the order they are given, before linking.
+ * Linked binaries are reused from {@link ProgramBinaryCache} when the driver allows it.
+ */
+public final class ShaderProgram {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ShaderProgram.class);
+
+    private final String name;
+    private int programId;
+    private final Map<String, Uniform> uniforms = new HashMap<>();
+
+    // Shared matrices, uploaded on bind when ShaderManager's copy is newer
+    private final Uniform projectionUniform;
+    private final Uniform modelViewUniform;
+    private int projectionVersion = -1;
+    private int modelViewVersion = -1;
+
+    public ShaderProgram(String name, String vertexSource, String fragmentSource, String... attributes) {
+        this.name = name;
+        this.programId = GlStateManager.createProgram();
+
+        String cacheKey = ProgramBinaryCache.key(name, vertexSource, fragmentSource, attributes);
+        if (!ProgramBinaryCache.load(programId, cacheKey)) {
+            link(vertexSource, fragmentSource, attributes);
+            ProgramBinaryCache.store(programId, cacheKey);
+        }
+
+        this.projectionUniform = getUniform("u_Projection");
+        this.modelViewUniform = getUniform("u_ModelView");
+
+        LOGGER.debug("Linked shader program {} ({})", name, programId);
+    }
+
+    private void link(String vertexSource, String fragmentSource, String... attributes) {
+        int vertexShader;
+        int fragmentShader;
+        try {
+            vertexShader = compile(GL_VERTEX_SHADER, vertexSource);
+        } catch (RuntimeException e) {
+            GlStateManager.deleteProgram(programId);
+            throw e;
+        }
+        try {
+            fragmentShader = compile(GL_FRAGMENT_SHADER, fragmentSource);
+        } catch (RuntimeException e) {
+            glDeleteShader(vertexShader);
+            GlStateManager.deleteProgram(programId);
+            throw e;
+        }
+
+        glAttachShader(programId, vertexShader);
+        glAttachShader(programId, fragmentShader);
+
+        for (int location = 0; location < attributes.length; location++) {
+            glBindAttribLocation(programId, location, attributes[location]);
+        }
+
+        ProgramBinaryCache.prepare(programId);
+        glLinkProgram(programId);
+
+        // Shaders are no longer needed once the program is linked
+        glDetachShader(programId, vertexShader);
+        glDetachShader(programId, fragmentShader);
+        glDeleteShader(vertexShader);
+        glDeleteShader(fragmentShader);
+
+        if (glGetProgrami(programId, GL_LINK_STATUS) == GL_FALSE) {
+            String log = glGetProgramInfoLog(programId);
+            GlStateManager.deleteProgram(programId);
+            throw new RuntimeException("Failed to link shader program " + name + ": " + log);
+        }
+    }
+
+    private int compile(int type, String source) {
+        int shader = glCreateShader(type);
+        glShaderSource(shader, source);
+        glCompileShader(shader);
+
+        if (glGetShaderi(shader, GL_COMPILE_STATUS) == GL_FALSE) {
+            String log = glGetShaderInfoLog(shader);
+            glDeleteShader(shader);
+            String stage = type == GL_VERTEX_SHADER ? "vertex" : "fragment";
+            throw new RuntimeException("Failed to compile " + stage + " shader for " + name + ": " + log);
+        }
+        return shader;
+    }
+
+    /**
+     * Make this the current program and bring the shared matrices up to date
+     */
+    public void bind() {
+        GlStateManager.useProgram(programId);
+
+        if (projectionVersion != ShaderManager.getProjectionVersion()) {
+            projectionUniform.set(ShaderManager.getProjection());
+            projectionVersion = ShaderManager.getProjectionVersion();
+        }
+        if (modelViewVersion != ShaderManager.getModelViewVersion()) {
+            modelViewUniform.set(ShaderManager.getModelView());
+            modelViewVersion = ShaderManager.getModelViewVersion();
+        }
+    }
+
+    /**
+     * Get the cached handle for a uniform, looking its location up on first use
+     */
+    public Uniform getUniform(String uniform) {
+        Uniform handle = uniforms.get(uniform);
+        if (handle == null) {
+            handle = new Uniform(uniform, glGetUniformLocation(programId, uniform));
+            uniforms.put(uniform, handle);
+        }
+        return handle;
+    }
+
+    public int getUniformLocation(String uniform) {
+        return getUniform(uniform).getLocation();
+    }
+
+    public int getProgramId() {
+        return programId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void cleanup() {
+        if (programId != 0) {
+            GlStateManager.deleteProgram(programId);
+            LOGGER.debug("Deleted shader program {}", name);
+            programId = 0;
+        }
+    }
+}
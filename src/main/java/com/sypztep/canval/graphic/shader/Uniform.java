@@ -0,0 +1,77 @@
+package com.sypztep.canval.graphic.shader;
+
+import org.joml.Matrix4f;
+import org.lwjgl.system.MemoryStack;
+
+import java.nio.FloatBuffer;
+
+import static org.lwjgl.opengl.GL20.*;
+
+/**
+ * Cached handle to one uniform of a {@link ShaderProgram}.
+ * The location is looked up once and the last uploaded value is remembered,
+ * so setting the same value again costs no GL call.
+ * The owning program must be bound when a value is set.
+ */
+public class Uniform {
+    private final String name;
+    private final int location;
+
+    private int intValue;
+    private float floatValue;
+    private final Matrix4f matrixValue = new Matrix4f();
+    private boolean uploaded = false;
+
+    Uniform(String name, int location) {
+        this.name = name;
+        this.location = location;
+    }
+
+    public void set(int value) {
+        if (location == -1 || (uploaded && intValue == value)) return;
+        glUniform1i(location, value);
+        intValue = value;
+        uploaded = true;
+    }
+
+    public void set(float value) {
+        if (location == -1 || (uploaded && Float.compare(floatValue, value) == 0)) return;
+        glUniform1f(location, value);
+        floatValue = value;
+        uploaded = true;
+    }
+
+    public void set(Matrix4f value) {
+        if (location == -1 || (uploaded && matrixValue.equals(value))) return;
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            FloatBuffer buffer = stack.mallocFloat(16);
+            glUniformMatrix4fv(location, false, value.get(buffer));
+        }
+        matrixValue.set(value);
+        uploaded = true;
+    }
+
+    /**
+     * Upload an int array (sampler units), always issuing the call
+     */
+    public void set(int[] values) {
+        if (location == -1) return;
+        glUniform1iv(location, values);
+        uploaded = false;
+    }
+
+    /**
+     * Whether the program actually uses this uniform (inactive uniforms are optimized away)
+     */
+    public boolean isActive() {
+        return location != -1;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getLocation() {
+        return location;
+    }
+}
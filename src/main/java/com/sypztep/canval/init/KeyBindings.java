@@ -24,6 +24,13 @@ public final class KeyBindings {
             KeyBinding.ENGINE_CATEGORY
     ));
 
+    public static final KeyBinding DEBUG_OVERLAY = registerBuiltIn(new KeyBinding(
+            "key.canval.debug_overlay",
+            InputUtil.Type.KEYSYM,
+            GLFW.GLFW_KEY_F3,
+            KeyBinding.ENGINE_CATEGORY
+    ));
+
     public static void init() {
         updateKeysByCode();
         LOGGER.info("KeyBindings initialized with {} bindings across {} categories",
@@ -1,7 +1,33 @@
 package com.sypztep.canval.util;
 
 import com.sypztep.canval.graphic.DrawContext;
+import com.sypztep.canval.graphic.FrameSnapshot;
 
 public interface ClientInitializer {
     void render(DrawContext context);
+
+    /**
+     * Advance game state. Only called when the render thread is enabled; runs on the main thread.
+     */
+    default void update(float deltaTime) {
+    }
+
+    /**
+     * Whether this client captures frames with {@link #record(FrameSnapshot)}. The render thread
+     * is only used for clients that do; the others keep drawing with {@link #render(DrawContext)}
+     * on the main thread even when it is enabled.
+     */
+    default boolean recordsFrames() {
+        return false;
+    }
+
+    /**
+     * Capture the next frame for the render thread. Runs on the main thread right after
+     * {@link #update(float)}, and the snapshot is drawn while the main thread already updates
+     * the frame after it. Put geometry into {@link FrameSnapshot#getGeometry()}; anything passed
+     * to {@link FrameSnapshot#defer} must only read values copied for this frame, never live game state.
+     */
+    default void record(FrameSnapshot frame) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " does not record frame snapshots");
+    }
 }
@@ -1,5 +1,6 @@
 package com.sypztep.canval.util;
 
+import com.sypztep.canval.graphic.gl.GlStateManager;
 import com.sypztep.canval.util.resource.*;
 import org.lwjgl.opengl.GL12;
 import org.lwjgl.stb.STBImage;
@@ -14,6 +15,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -102,8 +104,8 @@ public final class ResourceManager {
         LOGGER.info("Binding texture to OpenGL: {}", texture.id());
 
         try {
-            int textureId = GL12.glGenTextures();
-            GL12.glBindTexture(GL12.GL_TEXTURE_2D, textureId);
+            int textureId = GlStateManager.genTexture();
+            GlStateManager.bindTexture(textureId);
 
             // Set texture parameters
             GL12.glTexParameteri(GL12.GL_TEXTURE_2D, GL12.GL_TEXTURE_MIN_FILTER, GL12.GL_NEAREST);
@@ -117,7 +119,7 @@ public final class ResourceManager {
 
             int error = GL12.glGetError();
             if (error != GL12.GL_NO_ERROR) {
-                GL12.glDeleteTextures(textureId);
+                GlStateManager.deleteTexture(textureId);
                 throw new RuntimeException("OpenGL error: " + error);
             }
 
@@ -158,6 +160,23 @@ public final class ResourceManager {
         }
     }
 
+    /**
+     * Load GLSL source text from assets/shaders
+     */
+    public static String loadShaderSource(ResourceLocation location) {
+        String resourcePath = ASSETS_PATH + "shaders/" + location.path();
+
+        try (InputStream inputStream = ResourceManager.class.getResourceAsStream(resourcePath)) {
+            if (inputStream == null)
+                throw new RuntimeException("Shader resource not found: " + resourcePath);
+
+            LOGGER.debug("Loading shader source: {}", resourcePath);
+            return new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to load shader: " + location.path(), e);
+        }
+    }
+
     public static void cleanup() {
         LOGGER.info("Cleaning up ResourceManager...");
         fontCache.values().forEach(MemoryUtil::memFree);
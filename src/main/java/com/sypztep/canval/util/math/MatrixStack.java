@@ -5,16 +5,26 @@ import org.joml.Matrix4f;
 import org.joml.Quaternionf;
 import org.joml.Vector3f;
 
-import java.util.ArrayDeque;
-import java.util.Deque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class MatrixStack {
-    private final Deque<Entry> stack = new ArrayDeque<>();
+    /**
+     * Stamp of every identity matrix, so identity entries compare equal without looking at the floats
+     */
+    public static final long IDENTITY_STAMP = 0L;
+    // Shared by all stacks (command buffers record on worker threads): equal stamps mean equal matrices
+    private static final AtomicLong STAMPS = new AtomicLong(IDENTITY_STAMP);
+
+    // Entries above the current depth are kept and reused by later pushes
+    private final List<Entry> stack = new ArrayList<>();
+    private int depth = 0;
 
     public MatrixStack() {
         Matrix4f positionMatrix = new Matrix4f();
         Matrix3f normalMatrix = new Matrix3f();
-        stack.addLast(new Entry(positionMatrix, normalMatrix));
+        stack.add(new Entry(positionMatrix, normalMatrix));
     }
 
     /**
@@ -25,7 +35,8 @@ public class MatrixStack {
     }
 
     public void translate(float x, float y, float z) {
-        Entry entry = stack.getLast();
+        Entry entry = peek();
+        entry.stamp = nextStamp();
         entry.positionMatrix.translate(x, y, z);
     }
     //Don't increase scale on text increase size of font instead it make font blur!
@@ -33,7 +44,8 @@ public class MatrixStack {
      * Applies the scale transformation to the top entry.
      */
     public void scale(float x, float y, float z) {
-        Entry entry = stack.getLast();
+        Entry entry = peek();
+        entry.stamp = nextStamp();
         entry.positionMatrix.scale(x, y, z);
 
         if (Math.abs(x) == Math.abs(y) && Math.abs(y) == Math.abs(z)) {
@@ -52,13 +64,15 @@ public class MatrixStack {
      * Applies the rotation transformation to the top entry.
      */
     public void multiply(Quaternionf quaternion) {
-        Entry entry = stack.getLast();
+        Entry entry = peek();
+        entry.stamp = nextStamp();
         entry.positionMatrix.rotate(quaternion);
         entry.normalMatrix.rotate(quaternion);
     }
 
     public void multiply(Quaternionf quaternion, float originX, float originY, float originZ) {
-        Entry entry = stack.getLast();
+        Entry entry = peek();
+        entry.stamp = nextStamp();
         entry.positionMatrix.rotateAround(quaternion, originX, originY, originZ);
         entry.normalMatrix.rotate(quaternion);
     }
@@ -67,7 +81,8 @@ public class MatrixStack {
      * Rotates around X axis (pitch)
      */
     public void rotateX(float angle) {
-        Entry entry = stack.getLast();
+        Entry entry = peek();
+        entry.stamp = nextStamp();
         entry.positionMatrix.rotateX(angle);
         entry.normalMatrix.rotateX(angle);
     }
@@ -76,7 +91,8 @@ public class MatrixStack {
      * Rotates around Y axis (yaw)
      */
     public void rotateY(float angle) {
-        Entry entry = stack.getLast();
+        Entry entry = peek();
+        entry.stamp = nextStamp();
         entry.positionMatrix.rotateY(angle);
         entry.normalMatrix.rotateY(angle);
     }
@@ -85,7 +101,8 @@ public class MatrixStack {
      * Rotates around Z axis (roll)
      */
     public void rotateZ(float angle) {
-        Entry entry = stack.getLast();
+        Entry entry = peek();
+        entry.stamp = nextStamp();
         entry.positionMatrix.rotateZ(angle);
         entry.normalMatrix.rotateZ(angle);
     }
@@ -94,38 +111,45 @@ public class MatrixStack {
      * Pushes a copy of the top entry onto this stack.
      */
     public void push() {
-        stack.addLast(new Entry(stack.getLast()));
+        Entry top = peek();
+        depth++;
+        if (depth < stack.size()) {
+            stack.get(depth).set(top);
+        } else {
+            stack.add(new Entry(top));
+        }
     }
 
     /**
      * Removes the entry at the top of this stack.
      */
     public void pop() {
-        if (stack.size() <= 1) {
+        if (depth == 0) {
             throw new IllegalStateException("Cannot pop the root matrix");
         }
-        stack.removeLast();
+        depth--;
     }
 
     /**
      * Returns the entry at the top of this stack.
      */
     public Entry peek() {
-        return stack.getLast();
+        return stack.get(depth);
     }
 
     /**
      * Returns whether this stack contains exactly one entry.
      */
     public boolean isEmpty() {
-        return stack.size() == 1;
+        return depth == 0;
     }
 
     /**
      * Sets the top entry to be the identity matrix.
      */
     public void loadIdentity() {
-        Entry entry = stack.getLast();
+        Entry entry = peek();
+        entry.stamp = IDENTITY_STAMP;
         entry.positionMatrix.identity();
         entry.normalMatrix.identity();
         entry.canSkipNormalization = true;
@@ -135,7 +159,8 @@ public class MatrixStack {
      * Multiplies the top position matrix with the given matrix.
      */
     public void multiplyPositionMatrix(Matrix4f matrix) {
-        Entry entry = stack.getLast();
+        Entry entry = peek();
+        entry.stamp = nextStamp();
         entry.positionMatrix.mul(matrix);
 
         // Check if we need to update the normal matrix
@@ -153,7 +178,8 @@ public class MatrixStack {
      * Applies perspective projection
      */
     public void perspective(float fov, float aspect, float near, float far) {
-        Entry entry = stack.getLast();
+        Entry entry = peek();
+        entry.stamp = nextStamp();
         Matrix4f perspective = new Matrix4f().perspective(fov, aspect, near, far);
         entry.positionMatrix.mul(perspective);
         entry.canSkipNormalization = false;
@@ -163,7 +189,8 @@ public class MatrixStack {
      * Applies orthographic projection
      */
     public void ortho(float left, float right, float bottom, float top, float near, float far) {
-        Entry entry = stack.getLast();
+        Entry entry = peek();
+        entry.stamp = nextStamp();
         Matrix4f ortho = new Matrix4f().ortho(left, right, bottom, top, near, far);
         entry.positionMatrix.mul(ortho);
         entry.canSkipNormalization = false;
@@ -175,12 +202,20 @@ public class MatrixStack {
     public void lookAt(float eyeX, float eyeY, float eyeZ,
                        float centerX, float centerY, float centerZ,
                        float upX, float upY, float upZ) {
-        Entry entry = stack.getLast();
+        Entry entry = peek();
+        entry.stamp = nextStamp();
         Matrix4f lookAt = new Matrix4f().lookAt(eyeX, eyeY, eyeZ, centerX, centerY, centerZ, upX, upY, upZ);
         entry.positionMatrix.mul(lookAt);
         entry.computeNormal();
     }
 
+    /**
+     * A stamp no matrix has carried before. Use it for matrices built outside a stack.
+     */
+    public static long nextStamp() {
+        return STAMPS.incrementAndGet();
+    }
+
     private boolean isTranslation(Matrix4f matrix) {
         return matrix.m00() == 1 && matrix.m01() == 0 && matrix.m02() == 0 &&
                 matrix.m10() == 0 && matrix.m11() == 1 && matrix.m12() == 0 &&
@@ -200,6 +235,7 @@ public class MatrixStack {
         final Matrix4f positionMatrix;
         final Matrix3f normalMatrix;
         boolean canSkipNormalization = true;
+        long stamp = IDENTITY_STAMP;
 
         Entry(Matrix4f positionMatrix, Matrix3f normalMatrix) {
             this.positionMatrix = positionMatrix;
@@ -210,6 +246,14 @@ public class MatrixStack {
             this.positionMatrix = new Matrix4f(other.positionMatrix);
             this.normalMatrix = new Matrix3f(other.normalMatrix);
             this.canSkipNormalization = other.canSkipNormalization;
+            this.stamp = other.stamp;
+        }
+
+        void set(Entry other) {
+            this.positionMatrix.set(other.positionMatrix);
+            this.normalMatrix.set(other.normalMatrix);
+            this.canSkipNormalization = other.canSkipNormalization;
+            this.stamp = other.stamp;
         }
 
         void computeNormal() {
@@ -220,11 +264,27 @@ public class MatrixStack {
 
         /**
          * Returns the matrix used to transform positions.
+         * Call {@link #markModified()} after changing it directly.
          */
         public Matrix4f getPositionMatrix() {
             return positionMatrix;
         }
 
+        /**
+         * Modification stamp of the position matrix. It changes whenever the matrix does, and
+         * two entries with the same stamp hold the same matrix, so uploads can skip comparing floats.
+         */
+        public long getStamp() {
+            return stamp;
+        }
+
+        /**
+         * Give the entry a new stamp after its matrix was modified outside the stack's methods
+         */
+        public void markModified() {
+            stamp = nextStamp();
+        }
+
         /**
          * Returns the matrix used to transform normal vectors.
          */
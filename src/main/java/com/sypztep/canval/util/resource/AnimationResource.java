@@ -0,0 +1,35 @@
+package com.sypztep.canval.util.resource;
+
+import com.sypztep.canval.util.ResourceLocation;
+
+/**
+ * A run of consecutive frames from a sprite sheet played at a fixed rate
+ */
+public record AnimationResource(
+        ResourceLocation id,
+        SpriteSheetResource sheet,
+        int firstFrame,
+        int frameCount,
+        float frameDuration, // Seconds per frame
+        boolean loop,
+        String displayName
+) {
+    public AnimationResource {
+        if (sheet == null)
+            throw new IllegalArgumentException("Animation needs a sprite sheet: " + id);
+
+        if (firstFrame < 0 || frameCount <= 0 || firstFrame + frameCount > sheet.frameCount())
+            throw new IllegalArgumentException("Animation " + id + " frames " + firstFrame + ".." + (firstFrame + frameCount - 1)
+                    + " outside sheet with " + sheet.frameCount() + " frames");
+
+        if (frameDuration <= 0)
+            throw new IllegalArgumentException("Frame duration must be positive: " + id);
+    }
+
+    /**
+     * Play every frame of the sheet
+     */
+    public static AnimationResource of(ResourceLocation id, SpriteSheetResource sheet, float framesPerSecond, boolean loop) {
+        return new AnimationResource(id, sheet, 0, sheet.frameCount(), 1.0f / framesPerSecond, loop, sheet.displayName());
+    }
+}
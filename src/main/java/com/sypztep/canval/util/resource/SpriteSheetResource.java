@@ -0,0 +1,58 @@
+package com.sypztep.canval.util.resource;
+
+import com.sypztep.canval.util.ResourceLocation;
+
+/**
+ * Fixed-size frames cut from one texture. Frame UV rects are normalised once at creation
+ * and stored packed as u1, v1, u2, v2 per frame, so drawing a frame never divides.
+ */
+public record SpriteSheetResource(
+        ResourceLocation id,
+        ResourceLocation texture,
+        float[] frameUvs,    // 4 floats per frame
+        int frameWidth,
+        int frameHeight,
+        String displayName
+) {
+    public SpriteSheetResource {
+        if (frameUvs == null || frameUvs.length == 0 || frameUvs.length % 4 != 0)
+            throw new IllegalArgumentException("Sprite sheet needs at least one frame: " + id);
+
+        if (frameWidth <= 0 || frameHeight <= 0)
+            throw new IllegalArgumentException("Frame size must be positive: " + id);
+    }
+
+    /**
+     * Cut a texture into a row-major grid of {@code frameCount} frames, starting at the top-left corner
+     */
+    public static SpriteSheetResource grid(ResourceLocation id, ResourceLocation texture, int textureWidth, int textureHeight,
+                                           int frameWidth, int frameHeight, int frameCount, String displayName) {
+        int columns = textureWidth / frameWidth;
+        int rows = textureHeight / frameHeight;
+        if (frameCount <= 0 || frameCount > columns * rows)
+            throw new IllegalArgumentException("Texture " + texture + " holds " + columns * rows + " frames, " + frameCount + " requested");
+
+        float[] uvs = new float[frameCount * 4];
+        for (int frame = 0; frame < frameCount; frame++) {
+            int x = (frame % columns) * frameWidth;
+            int y = (frame / columns) * frameHeight;
+            uvs[frame * 4] = (float) x / textureWidth;
+            uvs[frame * 4 + 1] = (float) y / textureHeight;
+            uvs[frame * 4 + 2] = (float) (x + frameWidth) / textureWidth;
+            uvs[frame * 4 + 3] = (float) (y + frameHeight) / textureHeight;
+        }
+        return new SpriteSheetResource(id, texture, uvs, frameWidth, frameHeight, displayName);
+    }
+
+    /**
+     * Grid sheet over a texture resource, using its size
+     */
+    public static SpriteSheetResource grid(ResourceLocation id, TextureResource texture,
+                                           int frameWidth, int frameHeight, int frameCount, String displayName) {
+        return grid(id, texture.id(), texture.width(), texture.height(), frameWidth, frameHeight, frameCount, displayName);
+    }
+
+    public int frameCount() {
+        return frameUvs.length / 4;
+    }
+}
@@ -0,0 +1,107 @@
+package com.sypztep.canval.graphic;
+
+import com.sypztep.canval.CanvalConfig;
+import com.sypztep.canval.util.resource.FontResource;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.lwjgl.opengl.GL;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.lwjgl.glfw.GLFW.*;
+import static org.lwjgl.system.MemoryUtil.NULL;
+
+/**
+ * Once warm, filling and flushing a batch must not allocate on the Java heap.
+ * Needs an OpenGL context; skipped where no display is available.
+ */
+class BatchAllocationTest {
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+    private static final int WARMUP_FRAMES = 500;
+    private static final int MEASURED_FRAMES = 100;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static long window = NULL;
+    private static DrawContext context;
+
+    @BeforeAll
+    static void createContext() {
+        assumeTrue(glfwInit(), "GLFW could not be initialized");
+        glfwDefaultWindowHints();
+        glfwWindowHint(GLFW_VISIBLE, GLFW_FALSE);
+        window = glfwCreateWindow(WIDTH, HEIGHT, "BatchAllocationTest", NULL, NULL);
+        if (window == NULL) glfwTerminate();
+        assumeTrue(window != NULL, "No OpenGL context available");
+
+        glfwMakeContextCurrent(window);
+        GL.createCapabilities();
+        context = new DrawContext(WIDTH, HEIGHT);
+    }
+
+    @AfterAll
+    static void destroyContext() {
+        if (context != null) context.cleanup();
+        if (window != NULL) {
+            glfwDestroyWindow(window);
+            glfwTerminate();
+        }
+    }
+
+    @Test
+    void warmBatchDoesNotAllocate() {
+        assumeTrue(THREADS.isThreadAllocatedMemorySupported(), "Allocation counting not supported");
+        THREADS.setThreadAllocatedMemoryEnabled(true);
+
+        FontResource font = CanvalConfig.getDefaultFont();
+        CachedPanel panel = new CachedPanel(120, 60, ctx -> ctx.drawRect(0, 0, 120, 60, 0xFF204060));
+
+        for (int i = 0; i < WARMUP_FRAMES; i++) {
+            drawFrame(font, panel);
+        }
+
+        long allocated = 0;
+        for (int i = 0; i < MEASURED_FRAMES; i++) {
+            allocated += drawFrame(font, panel);
+        }
+
+        assertEquals(0L, allocated, "Bytes allocated by " + MEASURED_FRAMES + " warm batches");
+    }
+
+    /**
+     * Draw one frame
+     *
+     * @return bytes allocated from the first draw call to the end of the flush
+     */
+    private static long drawFrame(FontResource font, CachedPanel panel) {
+        context.beginFrame();
+
+        long before = THREADS.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < 200; i++) {
+            float x = (i % 20) * 30.0f;
+            float y = (i / 20) * 30.0f;
+            context.drawRect(x, y, 24, 24, 0xFF3080C0);
+        }
+        context.drawRectOutline(10, 10, 200, 100, 2, 0xFFFFFFFF);
+        context.drawRoundedRect(300, 40, 160, 80, 12.0f, 0xC0000000);
+        context.drawCircle(500, 300, 40, 0xFFE04848);
+        context.drawLine(0, 0, WIDTH, HEIGHT, 2.0f, 0xFF00FF00);
+
+        context.push();
+        context.translate(40, 200);
+        context.drawText("Allocation free 123", 0, 0, 16.0f, font, 0xFFFFFFFF);
+        context.pop();
+
+        context.drawCachedPanel(panel, 400, 380);
+        context.flush();
+        long allocated = THREADS.getCurrentThreadAllocatedBytes() - before;
+
+        context.endFrame();
+        return allocated;
+    }
+}
@@ -0,0 +1,66 @@
+package com.sypztep.canval.graphic;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Once warm, queuing quads into the struct-of-arrays batch and sorting it must not allocate.
+ * Runs without an OpenGL context; {@link BatchAllocationTest} covers the full draw path where a display exists.
+ */
+class QuadBatchAllocationTest {
+    private static final int WIDTH = 1280;
+    private static final int HEIGHT = 720;
+    private static final int QUADS = 5000;
+    private static final int WARMUP_FRAMES = 500;
+    private static final int MEASURED_FRAMES = 100;
+
+    private static final RenderLayer[] LAYERS = RenderLayer.values();
+    private static final BlendMode[] BLEND_MODES = BlendMode.values();
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    @Test
+    void warmSubmitAndSortDoNotAllocate() {
+        assumeTrue(THREADS.isThreadAllocatedMemorySupported(), "Allocation counting not supported");
+        THREADS.setThreadAllocatedMemoryEnabled(true);
+
+        QuadBatch batch = new QuadBatch(64);
+        for (int i = 0; i < WARMUP_FRAMES; i++) {
+            fillAndSort(batch);
+        }
+
+        long allocated = 0;
+        for (int i = 0; i < MEASURED_FRAMES; i++) {
+            allocated += fillAndSort(batch);
+        }
+
+        assertEquals(0L, allocated, "Bytes allocated by " + MEASURED_FRAMES + " warm batches");
+    }
+
+    /**
+     * Queue a frame's worth of overlapping quads across layers, blend modes and textures, then sort them
+     *
+     * @return bytes allocated from the first quad to the end of the sort
+     */
+    private static long fillAndSort(QuadBatch batch) {
+        long before = THREADS.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < QUADS; i++) {
+            float x = (i * 37) % WIDTH;
+            float y = (i * 53) % HEIGHT;
+            int color = 0xFF000000 | i;
+            int vertex = batch.addQuad(LAYERS[i % LAYERS.length], BLEND_MODES[(i / 7) % BLEND_MODES.length], 1 + i % 12) * 4;
+            batch.putVertex(vertex, x, y, 0, 0, color);
+            batch.putVertex(vertex + 1, x + 48, y, 1, 0, color);
+            batch.putVertex(vertex + 2, x + 48, y + 32, 1, 1, color);
+            batch.putVertex(vertex + 3, x, y + 32, 0, 1, color);
+        }
+        batch.sort(WIDTH, HEIGHT);
+        batch.clear();
+        return THREADS.getCurrentThreadAllocatedBytes() - before;
+    }
+}
@@ -0,0 +1,38 @@
+package com.sypztep.canval.graphic;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class QuadSorterTest {
+    private static final int GROUP_LIMIT = 0x10000;
+
+    @Test
+    void stopsBeforeOverlapGroupsOverflow() {
+        // Every quad overlaps the previous one with another texture, so each needs a new group
+        int quads = GROUP_LIMIT + 10;
+        QuadBatch batch = new QuadBatch(quads);
+        for (int i = 0; i < quads; i++) {
+            int vertex = batch.addQuad(RenderLayer.UI, BlendMode.ALPHA, 1 + (i & 1)) * 4;
+            batch.putVertex(vertex, 0, 0, 0, 0, -1);
+            batch.putVertex(vertex + 1, 16, 0, 1, 0, -1);
+            batch.putVertex(vertex + 2, 16, 16, 1, 1, -1);
+            batch.putVertex(vertex + 3, 0, 16, 0, 1, -1);
+        }
+
+        int[] order = batch.sort(640, 480);
+        assertEquals(GROUP_LIMIT, batch.getSortedCount(), "Quads sorted before the group limit");
+        for (int i = 0; i < GROUP_LIMIT; i++) {
+            assertEquals(i, order[i], "Overlapping quads keep submission order");
+        }
+
+        batch.removeFirst(GROUP_LIMIT);
+        assertEquals(10, batch.quadCount, "Quads left for the next batch");
+        order = batch.sort(640, 480);
+        assertEquals(10, batch.getSortedCount(), "Remaining quads sorted");
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, order[i], "Remaining quads keep submission order");
+        }
+        assertEquals(1 + (GROUP_LIMIT & 1), batch.textures[0], "Remaining quads moved to the front");
+    }
+}
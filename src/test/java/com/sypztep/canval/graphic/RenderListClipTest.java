@@ -0,0 +1,99 @@
+package com.sypztep.canval.graphic;
+
+import com.sypztep.canval.graphic.gl.GlStateManager;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.lwjgl.opengl.GL;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.lwjgl.glfw.GLFW.*;
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.system.MemoryUtil.NULL;
+
+/**
+ * A list recorded under a clip must not bake that clip in: replayed without one, it draws in full.
+ * Needs an OpenGL context; skipped where no display is available.
+ */
+class RenderListClipTest {
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+
+    private static long window = NULL;
+    private static DrawContext context;
+
+    @BeforeAll
+    static void createContext() {
+        assumeTrue(glfwInit(), "GLFW could not be initialized");
+        glfwDefaultWindowHints();
+        glfwWindowHint(GLFW_VISIBLE, GLFW_FALSE);
+        window = glfwCreateWindow(WIDTH, HEIGHT, "RenderListClipTest", NULL, NULL);
+        if (window == NULL) glfwTerminate();
+        assumeTrue(window != NULL, "No OpenGL context available");
+
+        glfwMakeContextCurrent(window);
+        GL.createCapabilities();
+        context = new DrawContext(WIDTH, HEIGHT);
+    }
+
+    @AfterAll
+    static void destroyContext() {
+        if (context != null) context.cleanup();
+        if (window != NULL) {
+            glfwDestroyWindow(window);
+            glfwTerminate();
+        }
+    }
+
+    @Test
+    void recordedQuadsIgnoreTheClip() {
+        context.beginFrame();
+        context.pushClip(0, 0, 50, 50);
+        context.beginRecording();
+        context.drawRect(10, 10, 100, 100, 0xFF3080C0);
+        RenderList list = context.endRecording();
+        context.popClip();
+
+        context.drawList(list);
+        context.endFrame();
+
+        float[] bounds = recordedBounds(list);
+        list.cleanup();
+
+        assertEquals(10.0f, bounds[0], "min x");
+        assertEquals(10.0f, bounds[1], "min y");
+        assertEquals(110.0f, bounds[2], "max x");
+        assertEquals(110.0f, bounds[3], "max y");
+    }
+
+    /**
+     * Screen-space min x, min y, max x, max y of every recorded vertex
+     */
+    private static float[] recordedBounds(RenderList list) {
+        int size = list.getQuadCount() * 4 * RenderSystem.VERTEX_STRIDE;
+        ByteBuffer vertices = list.getStaging();
+        boolean uploaded = vertices == null;
+        if (uploaded) {
+            vertices = MemoryUtil.memAlloc(size);
+            GlStateManager.bindVertexBuffer(list.getBufferId());
+            glGetBufferSubData(GL_ARRAY_BUFFER, 0, vertices);
+        }
+
+        float[] bounds = {Float.MAX_VALUE, Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE};
+        for (int offset = 0; offset < size; offset += RenderSystem.VERTEX_STRIDE) {
+            float x = vertices.getFloat(offset);
+            float y = vertices.getFloat(offset + Float.BYTES);
+            bounds[0] = Math.min(bounds[0], x);
+            bounds[1] = Math.min(bounds[1], y);
+            bounds[2] = Math.max(bounds[2], x);
+            bounds[3] = Math.max(bounds[3], y);
+        }
+
+        if (uploaded) MemoryUtil.memFree(vertices);
+        return bounds;
+    }
+}